@@ -47,6 +47,9 @@ public class AlgoPrefixSpan{
 	long startTime;
 	long endTime;
 	
+	/** the maximum memory usage of this execution, recorded for the statistics */
+	private MemoryLogger memoryLogger = new MemoryLogger();
+	
 	/** the number of pattern found */
 	int patternCount;
 	
@@ -194,6 +197,43 @@ public class AlgoPrefixSpan{
 		return patterns;
 	}
 	
+	/**
+	 * Run the algorithm
+	 * @param dataset : a sequence database (its sequences are modified by the algorithm)
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 *                         or null if you want the result to be saved into memory
+	 * @return return the result, if saved into memory, otherwise null
+	 * @throws IOException  exception if error while writing the file
+	 */
+	public SequentialPatterns runAlgorithm(SequenceDatabase dataset, double minsupRelative, String outputFilePath) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+
+		// Load the sequence database
+		sequenceDatabase = dataset;
+		sequenceCount = sequenceDatabase.size();
+
+		// convert to a absolute minimum support
+		this.minsuppAbsolute = (int) Math.ceil(minsupRelative * sequenceCount);
+		if(this.minsuppAbsolute == 0){ // protection
+			this.minsuppAbsolute = 1;
+		}
+
+		// run the algorithm
+		prefixSpan(sequenceDatabase, outputFilePath);
+
+		sequenceDatabase = null;
+
+		// record end time
+		endTime = System.currentTimeMillis();
+		// close the output file if the result was saved to a file
+		if(writer != null){
+			writer.close();
+		}
+		return patterns;
+	}
+
 	/**
 	 * Run the algorithm
 	 * @param inputFile : a sequence database
@@ -206,7 +246,7 @@ public class AlgoPrefixSpan{
 	public SequentialPatterns runAlgorithm(String inputFile, String outputFilePath, int minsup) throws IOException {
 		// initialize variables for statistics
 		patternCount =0;
-		MemoryLogger.getInstance().reset();
+		memoryLogger.reset();
 		// save the minsup chosen  by the user
 		this.minsuppAbsolute = minsup;
 		// save the start time
@@ -725,7 +765,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		}
 		
 		// check the current memory usage
-		MemoryLogger.getInstance().checkMemory();
+		memoryLogger.checkMemory();
 	}
 	/**
 	 * Method to recursively grow a given sequential pattern.
@@ -811,7 +851,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		}
 		
 		// check the current memory usage
-		MemoryLogger.getInstance().checkMemory();
+		memoryLogger.checkMemory();
 	}
 	
 	/**
@@ -859,7 +899,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 				}
 			}
 		}
-		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
+		memoryLogger.checkMemory();  // check the memory for statistics.
 		// return the map of pairs
 		return mapItemsPseudoSequences;
 	}
@@ -997,7 +1037,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 				}
 			}
 		}
-		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
+		memoryLogger.checkMemory();  // check the memory for statistics.
 		// return the map of pairs
 		return mapsPairs;
 	}
@@ -1013,7 +1053,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		r.append(" Frequent sequences count : " + patternCount);
 		r.append('\n');
 		r.append(" Max memory (mb) : ");
-		r.append(MemoryLogger.getInstance().getMaxMemory());
+		r.append(memoryLogger.getMaxMemory());
 		r.append('\n');
 		r.append(" minsup = " + minsuppAbsolute + " sequences.");
 		r.append('\n');
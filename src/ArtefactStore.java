@@ -0,0 +1,210 @@
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class stores on disk the artefacts computed by gRosSo for each dataset, so that they can be reused
+ * by the following executions: the size and the upper bound on the VC-dimension of the dataset, the FSP
+ * mined from the dataset with the lowest minimum frequency threshold used so far, and the supports of all
+ * the candidates counted in the dataset. The artefacts are keyed by the checksum of the content of the
+ * dataset, so that when a dataset changes only the artefacts that depend on it are computed again.
+ * The artefacts of the dataset with checksum c are stored in the files c_bounds.txt, c_mined.txt and
+ * c_supports.txt of the provided folder.
+ */
+public class ArtefactStore {
+
+    private File dir;
+    // the checksums already computed, with the length and the last modification time of the file, shared
+    // by all the stores and the checkpoints
+    private static final Object2ObjectOpenHashMap<String,String[]> checksums = new Object2ObjectOpenHashMap<>();
+
+    /**
+     * Creates a store in the provided folder, creating the folder if it does not exist
+     * @param   dir  the folder of the artefacts
+     */
+    ArtefactStore(String dir){
+        this.dir = new File(dir);
+        this.dir.mkdirs();
+    }
+
+    /**
+     * Computes the MD5 checksum of the content of the provided file
+     * @param   file  the input dataset
+     * @return  the checksum as an hexadecimal string
+     */
+    String checksum(String file) throws IOException {
+        return checksum(new File(file));
+    }
+
+    /**
+     * Computes the MD5 checksum of the content of the provided file, reading the file only if it changed
+     * since its checksum was last computed
+     * @param   f  the input file
+     * @return  the checksum as an hexadecimal string
+     */
+    static synchronized String checksum(File f) throws IOException {
+        String key = f.getCanonicalPath();
+        String stamp = f.length() + "_" + f.lastModified();
+        String[] known = checksums.get(key);
+        if(known!=null && known[0].equals(stamp)) return known[1];
+        String checksum = md5(f);
+        checksums.put(key,new String[]{stamp,checksum});
+        return checksum;
+    }
+
+    /**
+     * Computes the MD5 checksum of the content of the provided file, without storing it
+     * @param   f  the input file
+     * @return  the checksum as an hexadecimal string
+     */
+    private static String md5(File f) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(f);
+        byte[] buffer = new byte[1<<16];
+        int n;
+        while((n=in.read(buffer))>0) md.update(buffer,0,n);
+        in.close();
+        StringBuilder sb = new StringBuilder();
+        for(byte b: md.digest()) sb.append(String.format("%02x",b));
+        return sb.toString();
+    }
+
+    /**
+     * Loads the size and the upper bound on the VC-dimension of a dataset
+     * @param   checksum  the checksum of the dataset
+     * @return  the size and the upper bound on the VC-dimension, or null if they are not stored
+     */
+    int[] loadBounds(String checksum) throws IOException {
+        File f = new File(dir,checksum+"_bounds.txt");
+        if(!f.exists()) return null;
+        BufferedReader br = new BufferedReader(new FileReader(f));
+        String[] splited = br.readLine().split(" ");
+        br.close();
+        return new int[]{Integer.parseInt(splited[0]),Integer.parseInt(splited[1])};
+    }
+
+    /**
+     * Stores the size and the upper bound on the VC-dimension of a dataset
+     * @param   checksum  the checksum of the dataset
+     * @param   size      the size of the dataset
+     * @param   dim       the upper bound on the VC-dimension of the dataset
+     */
+    void saveBounds(String checksum, int size, int dim) throws IOException {
+        File tmp = new File(dir,checksum+"_bounds.tmp");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+        bw.write(size + " " + dim + "\n");
+        bw.close();
+        replace(tmp,new File(dir,checksum+"_bounds.txt"));
+    }
+
+    /**
+     * Returns the minimum frequency threshold used to mine the stored FSP of a dataset
+     * @param   checksum  the checksum of the dataset
+     * @return  the minimum frequency threshold, or Double.MAX_VALUE if no FSP are stored
+     */
+    double minedTheta(String checksum) throws IOException {
+        File f = new File(dir,checksum+"_mined.txt");
+        if(!f.exists()) return Double.MAX_VALUE;
+        BufferedReader br = new BufferedReader(new FileReader(f));
+        double theta = Double.parseDouble(br.readLine().split("#THETA: ")[1]);
+        br.close();
+        return theta;
+    }
+
+    /**
+     * Loads the stored FSP of a dataset with support at least minSupp
+     * @param   checksum  the checksum of the dataset
+     * @param   minSupp   the minimum support
+     * @param   supports  the map where the supports of the loaded FSP are stored
+     * @return  the loaded FSP
+     */
+    ObjectArrayList<String> loadMined(String checksum, int minSupp, Object2IntOpenHashMap<String> supports) throws IOException {
+        ObjectArrayList<String> mined = new ObjectArrayList<>();
+        BufferedReader br = new BufferedReader(new FileReader(new File(dir,checksum+"_mined.txt")));
+        br.readLine();
+        String line;
+        while((line=br.readLine())!=null){
+            String[] splited = line.split("#SUP: ");
+            int supp = Integer.parseInt(splited[1].trim());
+            if(supp<minSupp) continue;
+            mined.add(splited[0]);
+            supports.put(splited[0],supp);
+        }
+        br.close();
+        return mined;
+    }
+
+    /**
+     * Stores the FSP mined from a dataset
+     * @param   checksum  the checksum of the dataset
+     * @param   theta     the minimum frequency threshold used to mine the dataset
+     * @param   file      the file with the FSP written by PrefixSpan
+     */
+    void saveMined(String checksum, double theta, String file) throws IOException {
+        File tmp = new File(dir,checksum+"_mined.tmp");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+        bw.write("#THETA: " + theta + "\n");
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        String line;
+        while((line=br.readLine())!=null){
+            bw.write(line);
+            bw.write("\n");
+        }
+        br.close();
+        bw.close();
+        replace(tmp,new File(dir,checksum+"_mined.txt"));
+    }
+
+    /**
+     * Loads the supports of the candidates already counted in a dataset
+     * @param   checksum  the checksum of the dataset
+     * @return  the supports of the candidates
+     */
+    Object2IntOpenHashMap<String> loadSupports(String checksum) throws IOException {
+        Object2IntOpenHashMap<String> supports = new Object2IntOpenHashMap<>();
+        File f = new File(dir,checksum+"_supports.txt");
+        if(!f.exists()) return supports;
+        BufferedReader br = new BufferedReader(new FileReader(f));
+        String line;
+        while((line=br.readLine())!=null){
+            String[] splited = line.split("#SUP: ");
+            // a line truncated by an interrupted execution is ignored
+            if(splited.length<2 || !line.endsWith("#")) continue;
+            supports.put(splited[0],Integer.parseInt(splited[1].substring(0,splited[1].length()-1).trim()));
+        }
+        br.close();
+        return supports;
+    }
+
+    /**
+     * Appends the supports of new candidates counted in a dataset
+     * @param   checksum  the checksum of the dataset
+     * @param   patterns  the candidates
+     * @param   supp      the supports of the candidates
+     */
+    void saveSupports(String checksum, ObjectArrayList<String> patterns, int[] supp) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(new File(dir,checksum+"_supports.txt"),true));
+        for(int p=0;p<supp.length;p++){
+            bw.write(patterns.get(p) + "#SUP: " + supp[p] + "#\n");
+        }
+        bw.close();
+    }
+
+    /**
+     * Replaces a file with a new one
+     * @param   tmp   the new file
+     * @param   file  the file to replace
+     */
+    private static void replace(File tmp, File file) throws IOException {
+        if(file.exists() && !file.delete()) throw new IOException("cannot replace " + file);
+        if(!tmp.renameTo(file)) throw new IOException("cannot write " + file);
+    }
+}
@@ -1,13 +1,30 @@
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * This class is used to generated new random datasets in the ArtificialTest class.
+ * This class is used to generated new random datasets in the ArtificialTest class, written in files or
+ * resampled in memory from the original datasets.
  */
 
 public class ArtificialDataset{
 
+    // the maximum number of bytes of a memory-mapped region of the input dataset
+    static int mapBytes = 1<<30;
+
     /**
      * Creates a random dataset sampling random transactions from the dataset provided in input.
      *
@@ -17,24 +34,212 @@ public class ArtificialDataset{
      * @param  seed    seed of the random generator
      */
     static void randomDataset(String fileIn, String fileOut, int size,int seed) throws IOException {
-        ArrayList<String> dataset = new ArrayList<>();
+        randomDatasets(fileIn,new String[]{fileOut},size,new int[]{seed});
+    }
+
+    /**
+     * Creates more random datasets sampling random transactions from the dataset provided in input, one for
+     * each seed. The input dataset is not loaded in memory: the offsets of its transactions are computed once,
+     * the dataset is memory-mapped, and the sampled transactions are copied from the mapped bytes to the
+     * outputs. The random datasets are written in parallel, and each of them is the same of randomDataset
+     * with the same seed.
+     *
+     * @param  fileIn   input dataset
+     * @param  filesOut random datasets in output
+     * @param  size     size of the random datasets
+     * @param  seeds    seeds of the random generator of each random dataset
+     */
+    static void randomDatasets(String fileIn, String[] filesOut, int size, int[] seeds) throws IOException {
+        long[] starts = lineStarts(fileIn);
+        int dim = starts.length-1;
+        // each region starts at the beginning of a transaction and contains only complete transactions
+        LongArrayList regionStarts = new LongArrayList();
+        regionStarts.add(0);
+        for(int l=0;l<dim;l++){
+            long regionStart = regionStarts.getLong(regionStarts.size()-1);
+            if(starts[l]>regionStart && starts[l+1]-regionStart>mapBytes) regionStarts.add(starts[l]);
+        }
+        FileChannel channel = FileChannel.open(Paths.get(fileIn),StandardOpenOption.READ);
+        long length = channel.size();
+        MappedByteBuffer[] regions = new MappedByteBuffer[regionStarts.size()];
+        for(int k=0;k<regions.length;k++){
+            long start = regionStarts.getLong(k);
+            long end = k+1<regions.length ? regionStarts.getLong(k+1) : length;
+            regions[k] = channel.map(FileChannel.MapMode.READ_ONLY,start,end-start);
+        }
+        channel.close();
+        long[] offsets = regionStarts.toLongArray();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,Math.min(seeds.length,Runtime.getRuntime().availableProcessors())));
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for(int s=0;s<seeds.length;s++){
+            int seed = seeds[s];
+            String fileOut = filesOut[s];
+            results.add(pool.submit(() -> {
+                writeSample(regions,offsets,starts,size,seed,fileOut);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for(Future<?> result: results) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Creates more random datasets sampling random transactions from the dataset provided in input, one for
+     * each seed, without writing them. The input dataset is loaded only once, and each random dataset is a
+     * view of it, made of the sampled transactions for PrefixSpan and of the multiplicity of each transaction
+     * of the input dataset for the computation of the supports. The random datasets are added to the cache
+     * with the provided names, and each of them has the same transactions of randomDataset with the same seed.
+     * The memory of the input dataset is released when all the random datasets are removed from the cache.
+     *
+     * @param  cache    the cache where the random datasets are added
+     * @param  fileIn   input dataset
+     * @param  names    names of the random datasets in the cache
+     * @param  size     size of the random datasets
+     * @param  seeds    seeds of the random generator of each random dataset
+     */
+    static void resampledDatasets(DatasetCache cache, String fileIn, String[] names, int size, int[] seeds) throws IOException {
+        // the transactions parsed as in SequenceDatabase.loadFile, that skips the empty lines and the comments.
+        // The lines are not kept: only the ones that cannot be rebuilt from their transaction are stored
+        ArrayList<int[]> parsed = new ArrayList<>();
+        Int2ObjectOpenHashMap<String> raw = new Int2ObjectOpenHashMap<>();
         FileReader fr = new FileReader(fileIn);
-        BufferedReader br = new BufferedReader(fr);
+        BufferedReader br = new BufferedReader(fr,1<<16);
         String line;
         while((line=br.readLine())!=null){
-            dataset.add(line);
+            if(line.isEmpty() || line.charAt(0)=='#' || line.charAt(0)=='%' || line.charAt(0)=='@'){
+                raw.put(parsed.size(),line);
+                parsed.add(null);
+                continue;
+            }
+            if(line.charAt(line.length()-1)==' ') raw.put(parsed.size(),line);
+            String[] tokens = line.split(" ");
+            int[] sequence = new int[tokens.length];
+            for(int j=0;j<tokens.length;j++) sequence[j] = Integer.parseInt(tokens[j]);
+            parsed.add(sequence);
         }
         br.close();
         fr.close();
-        int dim = dataset.size();
+        int[][] sequences = parsed.toArray(new int[0][]);
+        int dim = sequences.length;
+        ShardedDataset index = ShardedDataset.load(cache.offHeap(),fileIn);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,Math.min(seeds.length,Runtime.getRuntime().availableProcessors())));
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for(int s=0;s<seeds.length;s++){
+            int seed = seeds[s];
+            String name = names[s];
+            results.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                int[] sampled = new int[size];
+                int[] multiplicity = new int[dim];
+                ArrayList<int[]> database = new ArrayList<>(size);
+                // the sequences are shared with the input dataset, but they are counted since PrefixSpan mines a copy
+                long bytes = 0;
+                for(int t=0;t<size;t++){
+                    sampled[t] = r.nextInt(dim);
+                    multiplicity[sampled[t]]++;
+                    if(sequences[sampled[t]]!=null){
+                        database.add(sequences[sampled[t]]);
+                        bytes += 4L*sequences[sampled[t]].length+16;
+                    }
+                }
+                DatasetCache.Entry entry = new DatasetCache.Entry();
+                entry.database = SequenceDatabase.of(database);
+                entry.index = index.resample(multiplicity);
+                int[] sampleSize = new int[1];
+                Iterator<String> lines = Arrays.stream(sampled).mapToObj(l -> raw.containsKey(l) ? raw.get(l) : line(sequences[l])).iterator();
+                entry.dim = SP.boundDimension(lines,sampleSize);
+                entry.size = sampleSize[0];
+                entry.bytes = entry.index.bytes() + bytes;
+                cache.put(name,entry);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for(Future<?> result: results) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            // the input dataset is released when all the random datasets are removed from the cache
+            index.close();
+        }
+    }
+
+    /**
+     * Converts a transaction parsed from a line of a dataset back to the line, in SPMF format
+     *
+     * @param  sequence  the parsed transaction
+     * @return the line of the transaction
+     */
+    private static String line(int[] sequence){
+        StringBuilder sb = new StringBuilder();
+        for(int j=0;j<sequence.length;j++){
+            if(j>0) sb.append(' ');
+            sb.append(sequence[j]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes the offsets of the transactions of the dataset provided in input
+     *
+     * @param  fileIn  input dataset
+     * @return the offset of each transaction, followed by the offset of the end of the last transaction
+     *         plus one, so that the l-th transaction and its new line span [starts[l], starts[l+1])
+     */
+    private static long[] lineStarts(String fileIn) throws IOException {
+        LongArrayList starts = new LongArrayList();
+        InputStream in = new FileInputStream(fileIn);
+        byte[] buffer = new byte[1<<16];
+        long offset = 0;
+        boolean newLine = true;
+        int n;
+        while((n=in.read(buffer))>0){
+            for(int b=0;b<n;b++){
+                if(newLine) starts.add(offset+b);
+                newLine = buffer[b]=='\n';
+            }
+            offset += n;
+        }
+        in.close();
+        starts.add(newLine ? offset : offset+1);
+        return starts.toLongArray();
+    }
+
+    /**
+     * Writes a random dataset copying the sampled transactions from the memory-mapped input dataset
+     *
+     * @param  regions  the memory-mapped regions of the input dataset
+     * @param  offsets  the offset of each region in the input dataset
+     * @param  starts   the offsets of the transactions of the input dataset
+     * @param  size     size of the random dataset
+     * @param  seed     seed of the random generator
+     * @param  fileOut  random dataset in output
+     */
+    private static void writeSample(MappedByteBuffer[] regions, long[] offsets, long[] starts, int size, int seed, String fileOut) throws IOException {
+        ByteBuffer[] views = new ByteBuffer[regions.length];
+        for(int k=0;k<regions.length;k++) views[k] = regions[k].duplicate();
+        int dim = starts.length-1;
         Random r = new Random(seed);
-        FileWriter fw = new FileWriter(fileOut);
-        BufferedWriter bw = new BufferedWriter(fw);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(fileOut),1<<16);
+        byte[] line = new byte[1<<10];
         for(int i=0;i<size;i++){
-            bw.write(dataset.get(r.nextInt(dim)) + "\n");
+            int l = r.nextInt(dim);
+            int k = Arrays.binarySearch(offsets,starts[l]);
+            if(k<0) k = -k-2;
+            int length = (int) (starts[l+1]-1-starts[l]);
+            if(length+1>line.length) line = new byte[2*(length+1)];
+            views[k].position((int) (starts[l]-offsets[k]));
+            views[k].get(line,0,length);
+            if(length>0 && line[length-1]=='\r') length--;
+            line[length] = '\n';
+            out.write(line,0,length+1);
         }
-        bw.close();
-        fw.close();
+        out.close();
     }
 
     /**
@@ -1,11 +1,16 @@
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This class is used to reproduce the experiments with the pseudo-artificial datasets.
@@ -14,13 +19,27 @@ import java.util.Set;
  */
 public class ArtificialTest {
 
+    // the output files of the jobs of a replicate
+    static final String[] FAMILIES = {"EP_freq","DP_freq","SP_freq","EP_grosso","DP_grosso","SP_grosso"};
+
     String[] datasets;
     int[] size;
     Object2ObjectOpenHashMap<String,double[]> candidate;
+    // if not null, the datasets are taken from the cache instead of being read from their files
+    DatasetCache cache;
+    // if true, the datasets are streamed one shard at a time during the exploration, instead of being loaded in memory
+    boolean outOfCore = false;
+    // if true, the datasets read from their files are stored off-heap (see CSRDataset)
+    boolean offHeap = false;
 
     ArtificialTest(String[] datasets, int[] size){
+        this(datasets,size,null);
+    }
+
+    ArtificialTest(String[] datasets, int[] size, DatasetCache cache){
         this.datasets = datasets;
         this.size = size;
+        this.cache = cache;
         candidate = new Object2ObjectOpenHashMap<>();
     }
 
@@ -44,36 +63,11 @@ public class ArtificialTest {
     }
 
     /**
-     * Converts a transaction from a string to an array of itemsets, that are arrays of int, and updates
-     * an index structure that stores the transactions in which an itemset appears
-     * @param   s         the transaction
-     * @param   transac   the index of the transaction
-     * @param   itemsMap  an index structure that stores the transactions in which an itemset appears   
-     * @return  the converted transaction
+     * Returns the patterns mined using the observed frequency-based approaches
+     * @return  the patterns
      */
-    private Object[] convertAndUpdate(String s, int transac, Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap){
-        String[] splited = s.split("-2")[0].split(" -1 ");
-        Object[] transaction = new Object[splited.length];
-        int j = 0;
-        for(String itemset_string: splited){
-            String[] splited2 = itemset_string.split(" ");
-            int[] itemset = new int[splited2.length];
-            int i = 0;
-            for(String item_string: splited2){
-                int item = Integer.parseInt(item_string);
-                itemset[i++] = item;
-                if(itemsMap.containsKey(item)){
-                    itemsMap.get(item).add(transac);
-                }
-                else{
-                    IntOpenHashSet transactions = new IntOpenHashSet();
-                    transactions.add(transac);
-                    itemsMap.put(item,transactions);
-                }
-            }
-            transaction[j++] = itemset;
-        }
-        return transaction;
+    Set<String> patterns(){
+        return candidate.keySet();
     }
 
     /**
@@ -84,42 +78,14 @@ public class ArtificialTest {
      * @param   theta     the minimum frequency threshold  
      */
     private void exploreDatasetSP(int i,double alpha, double theta) throws IOException {
-        ObjectArrayList<Object[]> dataset = new ObjectArrayList<>();
-        Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap = new Int2ObjectOpenHashMap<>();
-        FileReader fr = new FileReader(datasets[i]);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
-        int transac = 0;
-        while((line=br.readLine())!=null){
-            dataset.add(convertAndUpdate(line,transac++,itemsMap));
-        }
-        br.close();
-        fr.close();
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[] frequencies = frequencies(i,patterns);
         Set<String> remove = new HashSet<>();
-        for (String s: candidate.keySet()){
-            IntOpenHashSet toCheck = null;
-            String[] splited = s.split(" -1 ");
-            Object[] transaction = new Object[splited.length];
-            int k = 0;
-            for(String itemset_string: splited){
-                String[] splited2 = itemset_string.split(" ");
-                int[] itemset = new int[splited2.length];
-                int l = 0;
-                for(String item_string: splited2){
-                    int item = Integer.parseInt(item_string);
-                    itemset[l++] = item;
-                    if(!itemsMap.containsKey(item)) toCheck = new IntOpenHashSet();
-                    else {
-                        if (toCheck == null) {
-                            toCheck = itemsMap.get(item).clone();
-                        } else {
-                            toCheck.retainAll(itemsMap.get(item));
-                        }
-                    }
-                }
-                transaction[k++] = itemset;
-            }
-            double freq = computeFrequency(transaction,dataset,toCheck);
+        for(int k=0;k<patterns.length;k++){
+            String s = keys.get(k);
+            double freq = frequencies[k];
             if(freq>=theta) {
                 for (int j = 0; j < i; j++) {
                     if (Math.abs(candidate.get(s)[j] - freq) > alpha) {
@@ -139,42 +105,14 @@ public class ArtificialTest {
      * @param   epsilon   the emerging threshold
      */
     private void exploreDatasetEP(int i,double epsilon) throws IOException {
-        ObjectArrayList<Object[]> dataset = new ObjectArrayList<>();
-        Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap = new Int2ObjectOpenHashMap<>();
-        FileReader fr = new FileReader(datasets[i]);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
-        int transac = 0;
-        while((line=br.readLine())!=null){
-            dataset.add(convertAndUpdate(line,transac++,itemsMap));
-        }
-        br.close();
-        fr.close();
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[] frequencies = frequencies(i,patterns);
         Set<String> remove = new HashSet<>();
-        for (String s: candidate.keySet()){
-            IntOpenHashSet toCheck = null;
-            String[] splited = s.split(" -1 ");
-            Object[] transaction = new Object[splited.length];
-            int k = 0;
-            for(String itemset_string: splited){
-                String[] splited2 = itemset_string.split(" ");
-                int[] itemset = new int[splited2.length];
-                int l = 0;
-                for(String item_string: splited2){
-                    int item = Integer.parseInt(item_string);
-                    itemset[l++] = item;
-                    if(!itemsMap.containsKey(item)) toCheck = new IntOpenHashSet();
-                    else {
-                        if (toCheck == null) {
-                            toCheck = itemsMap.get(item).clone();
-                        } else {
-                            toCheck.retainAll(itemsMap.get(item));
-                        }
-                    }
-                }
-                transaction[k++] = itemset;
-            }
-            double freq = computeFrequency(transaction,dataset,toCheck);
+        for(int k=0;k<patterns.length;k++){
+            String s = keys.get(k);
+            double freq = frequencies[k];
             if(candidate.get(s)[i+1]-freq<=epsilon){
                 remove.add(s);
             }
@@ -190,42 +128,14 @@ public class ArtificialTest {
      * @param   epsilon   the emerging threshold
      */
     private void exploreDatasetDP(int i,double epsilon) throws IOException {
-        ObjectArrayList<Object[]> dataset = new ObjectArrayList<>();
-        Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap = new Int2ObjectOpenHashMap<>();
-        FileReader fr = new FileReader(datasets[i]);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
-        int transac = 0;
-        while((line=br.readLine())!=null){
-            dataset.add(convertAndUpdate(line,transac++,itemsMap));
-        }
-        br.close();
-        fr.close();
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[] frequencies = frequencies(i,patterns);
         Set<String> remove = new HashSet<>();
-        for (String s: candidate.keySet()){
-            IntOpenHashSet toCheck = null;
-            String[] splited = s.split(" -1 ");
-            Object[] transaction = new Object[splited.length];
-            int k = 0;
-            for(String itemset_string: splited){
-                String[] splited2 = itemset_string.split(" ");
-                int[] itemset = new int[splited2.length];
-                int l = 0;
-                for(String item_string: splited2){
-                    int item = Integer.parseInt(item_string);
-                    itemset[l++] = item;
-                    if(!itemsMap.containsKey(item)) toCheck = new IntOpenHashSet();
-                    else {
-                        if (toCheck == null) {
-                            toCheck = itemsMap.get(item).clone();
-                        } else {
-                            toCheck.retainAll(itemsMap.get(item));
-                        }
-                    }
-                }
-                transaction[k++] = itemset;
-            }
-            double freq = computeFrequency(transaction,dataset,toCheck);
+        for(int k=0;k<patterns.length;k++){
+            String s = keys.get(k);
+            double freq = frequencies[k];
             if(candidate.get(s)[i-1]-freq<=epsilon){
                 remove.add(s);
             }
@@ -235,45 +145,46 @@ public class ArtificialTest {
     }
 
     /**
-     * Check if the sequence min is a subsequence of sequence max
-     * @param   min  the first sequence
-     * @param   max  the second sequence
-     * @return  true if min is a subsequence of max, false otherwise
+     * Computes the frequencies of the patterns in the i-th dataset, taking the dataset from the cache,
+     * streaming it if outOfCore is true, or loading it
+     * @param   i         the index of the dataset
+     * @param   patterns  the patterns, converted with the CSRDataset.parse method
+     * @return  the frequencies of the patterns
      */
-    private boolean isSubsequence(Object[] min,Object[] max){
-        if(min.length>max.length) return false;
-        int i = 0;
-        int j = 0;
-        while(i<min.length && j<max.length) {
-            int[] itemsetMin = (int[])min[i];
-            int[] itemsetMax = (int[])max[j];
-            if (itemsetMin.length <= itemsetMax.length) {
-                int l = 0;
-                int k = 0;
-                while (k < itemsetMin.length && l < itemsetMax.length) {
-                    if (itemsetMax[l++]==itemsetMin[k]) k++;
-                }
-                if (k == itemsetMin.length) i++;
+    private double[] frequencies(int i, int[][] patterns) throws IOException {
+        if(cache!=null){
+            DatasetCache.Entry entry = cache.get(datasets[i]);
+            try {
+                return entry.index.computeFrequencies(patterns)[0];
+            } finally {
+                cache.release(entry);
             }
-            j++;
         }
-        return i == min.length;
+        return ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,datasets[i])[0];
     }
 
     /**
-     * Computes the frequency of the input sequence in the input dataset considering the transactions
-     * stored in the index structure
-     * @param   s         the input sequence
-     * @param   dataset   the input dataset
-     * @param   toCheck   an index structure that stores the transactions in which an itemset appears
-     * @return  the computed frequency
+     * Computes the frequencies of the patterns in all the datasets in a single traversal, taking the datasets
+     * from the cache, streaming them if outOfCore is true, or loading them
+     * @param   patterns  the patterns, converted with the CSRDataset.parse method
+     * @return  the frequencies, where freq[i][p] is the frequency of the p-th pattern in the i-th dataset
      */
-    private double computeFrequency(Object[] s, ObjectArrayList<Object[]> dataset, IntOpenHashSet toCheck){
-        int supp = 0;
-        for (int i: toCheck) {
-            if(isSubsequence(s,dataset.get(i))) supp++;
-        }
-        return supp/(dataset.size()*1.);
+    private double[][] frequencies(int[][] patterns) throws IOException {
+        if(cache==null) return ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,datasets);
+        double[][] freq = new double[datasets.length][];
+        for(int i=0;i<datasets.length;i++) freq[i] = frequencies(i,patterns);
+        return freq;
+    }
+
+    /**
+     * Returns the name of the file used to store the FSP mined from the i-th dataset
+     * @param   i         the index of the mined dataset
+     * @return  the name of the file
+     */
+    private String minedFile(int i) throws IOException {
+        // the jobs that share the cache may mine the same dataset at the same time
+        if(cache!=null) return File.createTempFile("grosso","_mined.txt").getPath();
+        return GRosSo.minedFile(datasets[i]);
     }
 
     /**
@@ -309,7 +220,13 @@ public class ArtificialTest {
     private int mining(String fileIn, String fileFSP, double theta){
         try {
             AlgoPrefixSpan alg = new AlgoPrefixSpan();
-            alg.runAlgorithm(fileIn, theta, fileFSP);
+            if(cache!=null){
+                DatasetCache.Entry entry = cache.get(fileIn);
+                SequenceDatabase database = entry.database.copy();
+                cache.release(entry);
+                alg.runAlgorithm(database, theta, fileFSP);
+            }
+            else alg.runAlgorithm(fileIn, theta, fileFSP);
             return alg.patternCount;
         }catch(IOException e) {
             e.printStackTrace();
@@ -324,8 +241,7 @@ public class ArtificialTest {
      * @param  fileOut  the output file
      */
     void executeEP(double theta, double epsilon, String fileOut, boolean gt) throws IOException {
-        String fileC = datasets[datasets.length-1].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
+        String fileC = minedFile(datasets.length-1);
         mining(datasets[datasets.length-1],fileC,theta);
         loadCandidate(datasets.length-1,fileC);
         for(int j=datasets.length-2;j>=0;j--){
@@ -344,8 +260,7 @@ public class ArtificialTest {
      * @param  fileOut  the output file
      */
     void executeSP(double theta, double alpha, String fileOut, boolean gt) throws IOException {
-        String fileC = datasets[0].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
+        String fileC = minedFile(0);
         mining(datasets[0],fileC,theta);
         loadCandidate(0,fileC);
         for(int j=1;j<datasets.length;j++){
@@ -364,8 +279,7 @@ public class ArtificialTest {
      * @param  fileOut  the output file
      */
     void executeDP(double theta, double epsilon, String fileOut, boolean gt) throws IOException {
-        String fileC = datasets[0].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
+        String fileC = minedFile(0);
         mining(datasets[0],fileC,theta);
         loadCandidate(0,fileC);
         for(int j=1;j<datasets.length;j++){
@@ -377,6 +291,84 @@ public class ArtificialTest {
         del.delete();
     }
 
+    /**
+     * Computes the ground truth of the EP, DP and SP with the observed frequency-based approaches, with the
+     * same patterns of executeEP, executeDP and executeSP. The first dataset, that gives the candidates of the
+     * DP and SP, and the last one, that gives the candidates of the EP, are mined only once, and the frequencies
+     * of all the candidates are computed in all the datasets in a single traversal, so that the three ground
+     * truths are selected from the same frequencies
+     * @param  theta    the minimum frequency threshold used for all the datasets
+     * @param  alpha    the error threshold of the SP
+     * @param  epsilon  the emerging threshold of the EP and DP
+     * @return the sorted hashes of the patterns of the EP, DP and SP, as computed by the hashes method
+     */
+    long[][] groundTruth(double theta, double alpha, double epsilon) throws IOException {
+        int n = datasets.length-1;
+        ObjectArrayList<String> patterns = new ObjectArrayList<>();
+        Object2IntOpenHashMap<String> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        IntArrayList first = minedPatterns(0,theta,patterns,ids);
+        IntArrayList last = n==0 ? first : minedPatterns(n,theta,patterns,ids);
+        int[][] parsed = new int[patterns.size()][];
+        for(int p=0;p<parsed.length;p++) parsed[p] = CSRDataset.parse(patterns.get(p));
+        double[][] freq = frequencies(parsed);
+        LongArrayList[] gt = new LongArrayList[3];
+        for(int f=0;f<gt.length;f++) gt[f] = new LongArrayList();
+        for(int p: last){
+            boolean emerging = true;
+            for(int j=n-1;j>=0 && emerging;j--) emerging = freq[j+1][p]-freq[j][p]>epsilon;
+            if(emerging) gt[0].add(CSRDataset.hash(parsed[p]));
+        }
+        for(int p: first){
+            boolean descending = true;
+            for(int j=1;j<=n && descending;j++) descending = freq[j-1][p]-freq[j][p]>epsilon;
+            if(descending) gt[1].add(CSRDataset.hash(parsed[p]));
+            boolean stable = true;
+            for(int j=1;j<=n && stable;j++){
+                stable = freq[j][p]>=theta;
+                for(int k=0;k<j && stable;k++) stable = Math.abs(freq[k][p]-freq[j][p])<=alpha;
+            }
+            if(stable) gt[2].add(CSRDataset.hash(parsed[p]));
+        }
+        long[][] hashes = new long[gt.length][];
+        for(int f=0;f<gt.length;f++){
+            hashes[f] = gt[f].toLongArray();
+            Arrays.sort(hashes[f]);
+        }
+        return hashes;
+    }
+
+    /**
+     * Mines the i-th dataset and adds the mined FSP to the provided patterns, if they are not already there
+     * @param   i         the index of the dataset to mine
+     * @param   theta     the minimum frequency threshold
+     * @param   patterns  the patterns
+     * @param   ids       the positions of the patterns
+     * @return  the positions of the FSP of the i-th dataset in the patterns
+     */
+    private IntArrayList minedPatterns(int i, double theta, ObjectArrayList<String> patterns, Object2IntOpenHashMap<String> ids) throws IOException {
+        String fileC = minedFile(i);
+        mining(datasets[i],fileC,theta);
+        IntArrayList mined = new IntArrayList();
+        FileReader fr = new FileReader(fileC);
+        BufferedReader br = new BufferedReader(fr);
+        String line;
+        while((line=br.readLine())!=null){
+            String pattern = line.split("#SUP: ")[0];
+            int id = ids.getInt(pattern);
+            if(id==-1){
+                id = patterns.size();
+                patterns.add(pattern);
+                ids.put(pattern,id);
+            }
+            mined.add(id);
+        }
+        br.close();
+        fr.close();
+        new File(fileC).delete();
+        return mined;
+    }
+
     /**
      * Computes the statistics in terms of false positives
      * @param  gtFile   the file congaing the ground truth
@@ -384,38 +376,150 @@ public class ArtificialTest {
      * @return the computed statistics
      */
     static double[] percentageFP(String gtFile, String file){
-        double[] res = new double[2];
-        int tot = 0;
-        int FP = 0;
         try {
-            FileReader fr = new FileReader(gtFile);
-            BufferedReader br = new BufferedReader(fr);
-            String line;
-            ObjectOpenHashSet<String> gt = new ObjectOpenHashSet<>();
-            while((line=br.readLine())!=null){
-                String[] splited = line.split("  ");
-                gt.add(splited[0]);
-            }
-            br.close();
-            fr.close();
-            fr = new FileReader(file);
-            br = new BufferedReader(fr);
-            while((line=br.readLine())!=null){
-                String[] splited = line.split("  ");
-                if(!gt.contains(splited[0])) FP++;
-                tot++;
-            }
-            br.close();
-            fr.close();
-            res[0] = FP/(tot*1.);
-            res[1] = tot/(gt.size()*1.);
-            return res;
+            return percentageFP(hashes(readPatterns(gtFile)),hashes(readPatterns(file)));
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return new double[2];
+    }
+
+    /**
+     * Computes the statistics in terms of false positives, comparing the hashes of the patterns: the false
+     * positives are the mined patterns that are not in the ground truth
+     * @param  gt      the sorted hashes of the patterns of the ground truth
+     * @param  mined   the sorted hashes of the patterns mined using gRosSo or the observed frequency-based approaches
+     * @return the computed statistics: the fraction of false positives and the ratio between the number of mined
+     *         patterns and the number of patterns of the ground truth
+     */
+    static double[] percentageFP(long[] gt, long[] mined){
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while(i<gt.length && j<mined.length){
+            if(gt[i]<mined[j]) i++;
+            else if(gt[i]>mined[j]) j++;
+            else{
+                common++;
+                i++;
+                j++;
+            }
+        }
+        double[] res = new double[2];
+        res[0] = (mined.length-common)/(mined.length*1.);
+        res[1] = mined.length/(gt.length*1.);
         return res;
     }
 
+    /**
+     * Computes the sorted 64-bit hashes of the provided patterns, so that sets of patterns are compared by
+     * merging primitive arrays instead of comparing their strings
+     * @param  patterns  the patterns
+     * @return the sorted hashes, computed by CSRDataset.hash on the patterns converted with CSRDataset.parse
+     */
+    static long[] hashes(Collection<String> patterns){
+        long[] hashes = new long[patterns.size()];
+        int k = 0;
+        for(String pattern: patterns) hashes[k++] = CSRDataset.hash(CSRDataset.parse(pattern));
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /**
+     * Reads the patterns written in the provided file by gRosSo or by the observed frequency-based approaches
+     * @param  file  the input file
+     * @return the patterns
+     */
+    private static ObjectArrayList<String> readPatterns(String file) throws IOException {
+        ObjectArrayList<String> patterns = new ObjectArrayList<>();
+        FileReader fr = new FileReader(file);
+        BufferedReader br = new BufferedReader(fr);
+        String line;
+        while((line=br.readLine())!=null) patterns.add(line.split("  ")[0]);
+        br.close();
+        fr.close();
+        return patterns;
+    }
+
+    /**
+     * Mines the random datasets of all the replicates concurrently, with the observed frequency-based
+     * approaches and with gRosSo, and compares the mined patterns with the ground truth. Each replicate gives
+     * six jobs (EP, DP and SP with the observed frequencies, then EP, DP and SP with gRosSo) that share the
+     * cache, and at most one job for each core is running, as long as the jobs fit in half of the memory.
+     * The patterns of the f-th job of the r-th replicate are written in prefix+(r+1)+"_"+FAMILIES[f]+".txt",
+     * and their hashes are kept in memory. The statistics are computed from the hashes after all the jobs are
+     * completed, so that they only depend on the seeds of the random datasets and not on the order of the jobs.
+     * @param  cache       the cache that contains the random datasets
+     * @param  samples     the random datasets of each replicate
+     * @param  sampleSize  the sizes of the random datasets
+     * @param  gt          the ground truth of the EP, DP and SP, as computed by groundTruth
+     * @param  delta       the confidence parameter
+     * @param  theta       the minimum frequency threshold
+     * @param  alpha       the error threshold
+     * @param  epsilon     the emerging threshold
+     * @param  prefix      the prefix of the output files
+     * @return the statistics, where stats[f][r] is the result of percentageFP for the f-th job of the r-th replicate
+     */
+    static double[][][] runReplicates(DatasetCache cache, String[][] samples, int[] sampleSize, long[][] gt, double delta,
+                                      double theta, double alpha, double epsilon, String prefix) throws IOException {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        JobScheduler scheduler = new JobScheduler(cache,Runtime.getRuntime().availableProcessors(),maxMemory/2);
+        // the expected number of candidates of each job
+        long candidates = 1000000;
+        ArrayList<Future<Void>> jobs = new ArrayList<>();
+        // mined[f][r] are the sorted hashes of the patterns of the f-th job of the r-th replicate
+        long[][][] mined = new long[FAMILIES.length][samples.length][];
+        for(int r=0;r<samples.length;r++){
+            String[] s = samples[r];
+            String out = prefix+(r+1)+"_";
+            int k = r;
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                ArtificialTest at = new ArtificialTest(s,sampleSize,cache);
+                at.executeEP(theta,epsilon,out+FAMILIES[0]+".txt",false);
+                mined[0][k] = hashes(at.patterns());
+            }));
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                ArtificialTest at = new ArtificialTest(s,sampleSize,cache);
+                at.executeDP(theta,epsilon,out+FAMILIES[1]+".txt",false);
+                mined[1][k] = hashes(at.patterns());
+            }));
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                ArtificialTest at = new ArtificialTest(s,sampleSize,cache);
+                at.executeSP(theta,alpha,out+FAMILIES[2]+".txt",false);
+                mined[2][k] = hashes(at.patterns());
+            }));
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                EP ep = new GRosSo(s,cache).executeEP(delta,epsilon,theta);
+                ep.write(out+FAMILIES[3]+".txt");
+                mined[3][k] = hashes(ep.patterns());
+            }));
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                DP dp = new GRosSo(s,cache).executeDP(delta,epsilon,theta);
+                dp.write(out+FAMILIES[4]+".txt");
+                mined[4][k] = hashes(dp.patterns());
+            }));
+            jobs.add(scheduler.submit(s,candidates,() -> {
+                SP sp = new GRosSo(s,cache).executeSP(delta,alpha,theta);
+                sp.write(out+FAMILIES[5]+".txt");
+                mined[5][k] = hashes(sp.patterns());
+            }));
+        }
+        try {
+            for(Future<Void> job: jobs) job.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            scheduler.shutdown();
+        }
+        double[][][] stats = new double[FAMILIES.length][samples.length][];
+        for(int f=0;f<FAMILIES.length;f++){
+            for(int r=0;r<samples.length;r++){
+                stats[f][r] = percentageFP(gt[f%3],mined[f][r]);
+            }
+        }
+        return stats;
+    }
+
     /**
     * This main executes all the experiments with pseudo-artificial datasets shown in the paper  
     */
@@ -432,58 +536,51 @@ public class ArtificialTest {
         System.out.println("Alpha: " + alpha);
         System.out.println("Epsilon: " + epsilon);
 
-        // Create ground truth for the EP
-        ArtificialTest at = new ArtificialTest(datasets,size);
-        at.executeEP(theta,epsilon,"../data/GT_EP.txt",true);
-        // Create ground truth for the DP
-        at = new ArtificialTest(datasets,size);
-        at.executeDP(theta,epsilon,"../data/GT_DP.txt",true);
-        // Create ground truth for the SP
-        at = new ArtificialTest(datasets,size);
-        at.executeSP(theta,alpha,"../data/GT_SP.txt",true);
+        // run with --off-heap to store the datasets outside of the heap
+        boolean offHeap = Arrays.asList(args).contains("--off-heap");
+
+        // Create ground truth for the EP, DP and SP, mining each dataset at most once and keeping it in memory
+        ArtificialTest test = new ArtificialTest(datasets,size);
+        test.offHeap = offHeap;
+        long[][] gt = test.groundTruth(theta,alpha,epsilon);
+        System.out.println("GT EP: " + gt[0].length);
+        System.out.println("GT DP: " + gt[1].length);
+        System.out.println("GT SP: " + gt[2].length);
 
         // Create 5 random sequences with fixed seed for reproducibility with size replicationFactor*originalSize
         int replicationFactor = 1;
         System.out.println("Replication Factor for Random Datasets: " + replicationFactor);
         int[] sampleSize = {290287*replicationFactor,331117*replicationFactor,326668*replicationFactor};
+        // the random datasets are not written: they are resampled in memory from the original datasets, that are
+        // loaded only once, and mined from the cache (use ArtificialDataset.randomDatasets to write them)
+        DatasetCache cache = new DatasetCache(Long.MAX_VALUE,offHeap);
+        int[] seeds = {1,2,3,4,5};
+        String[][] samples = new String[seeds.length][datasets.length];
         for(int j=0;j<datasets.length;j++) {
+            String[] names = new String[seeds.length];
             for (int i = 1; i < 6; i++) {
-                ArtificialDataset.randomDataset(datasets[j],"../data/sample2005t"+(j+1)+"_"+i+".txt",sampleSize[j],i);
+                names[i-1] = "../data/sample2005t"+(j+1)+"_"+i+".txt";
+                samples[i-1][j] = names[i-1];
             }
+            ArtificialDataset.resampledDatasets(cache,datasets[j],names,sampleSize[j],seeds);
         }
 
+        // Mining of the EP, DP and SP using the observed frequencies and gRosSo in the samples, running the replicates concurrently
         double delta = 0.1;
-        for (int i = 1; i < 6; i++) {
-            String[] samples = {"../data/sample2005t1_"+i+".txt", "../data/sample2005t2_"+i+".txt", "../data/sample2005t3_"+i+".txt"};
-            // Mining of the EP using the observed frequencies in the samples
-            at = new ArtificialTest(samples,size);
-            at.executeEP(theta,epsilon,"../data/sample_"+i+"_EP_freq.txt",false);
-            // Mining of the DP using the observed frequencies in the samples
-            at = new ArtificialTest(samples,size);
-            at.executeDP(theta,epsilon,"../data/sample_"+i+"_DP_freq.txt",false);
-            // Mining of the SP using the observed frequencies in the samples
-            at = new ArtificialTest(samples,size);
-            at.executeSP(theta,alpha,"../data/sample_"+i+"_SP_freq.txt",false);
-
-            // Mining of the EP using gRosSo in the samples
-            EP ep = new EP(samples);
-            ep.executeTheta(delta,epsilon,theta,"../data/sample_"+i+"_EP_grosso.txt");
-            // Mining of the DP using gRosSo in the samples
-            DP dp = new DP(samples);
-            dp.executeTheta(delta,epsilon,theta,"../data/sample_"+i+"_DP_grosso.txt");
-            // Mining of the SP using gRosSo in the samples
-            SP sp = new SP(samples);
-            sp.executeThetaAll(delta,alpha,theta,"../data/sample_"+i+"_SP_grosso.txt");
+        double[][][] stats = runReplicates(cache,samples,sampleSize,gt,delta,theta,alpha,epsilon,"../data/sample_");
+        // the random datasets are removed, releasing the original datasets they share
+        for(String[] sample: samples){
+            for(String name: sample) cache.remove(name);
         }
 
         // Compute artificial tests statistics
         int p_EP = 0;
         int p_DP = 0;
         int p_SP = 0;
-        for(int i=1;i<6;i++) {
-            if (percentageFP("../data/GT_EP.txt", "../data/sample_" + i + "_EP_freq.txt")[0] > 0) p_EP++;
-            if (percentageFP("../data/GT_DP.txt", "../data/sample_" + i + "_DP_freq.txt")[0] > 0) p_DP++;
-            if (percentageFP("../data/GT_SP.txt", "../data/sample_" + i + "_SP_freq.txt")[0] > 0) p_SP++;
+        for(int i=0;i<5;i++) {
+            if (stats[0][i][0] > 0) p_EP++;
+            if (stats[1][i][0] > 0) p_DP++;
+            if (stats[2][i][0] > 0) p_SP++;
         }
         System.out.println("Times FP_frequency EP: " + (p_EP/5.));
         System.out.println("Times FP_frequency DP: " + (p_DP/5.));
@@ -495,17 +592,13 @@ public class ArtificialTest {
         double perc_EP =0;
         double perc_DP =0;
         double perc_SP =0;
-        double[] res;
-        for(int i=1;i<6;i++){
-            res = percentageFP("../data/GT_EP.txt","../data/sample_" + i + "_EP_grosso.txt");
-            if(res[0]>0) p_EP++;
-            perc_EP+=res[1];
-            res = percentageFP("../data/GT_DP.txt","../data/sample_" + i + "_DP_grosso.txt");
-            if(res[0]>0) p_DP++;
-            perc_DP+=res[1];
-            res = percentageFP("../data/GT_SP.txt","../data/sample_" + i + "_SP_grosso.txt");
-            if(res[0]>0) p_SP++;
-            perc_SP+=res[1];
+        for(int i=0;i<5;i++){
+            if(stats[3][i][0]>0) p_EP++;
+            perc_EP+=stats[3][i][1];
+            if(stats[4][i][0]>0) p_DP++;
+            perc_DP+=stats[4][i][1];
+            if(stats[5][i][0]>0) p_SP++;
+            perc_SP+=stats[5][i][1];
         }
         System.out.println("Times FP_gRosSo EP: " + (p_EP/5.) + " |A|/|GT|: " + (perc_EP/5.));
         System.out.println("Times FP_gRosSo DP: " + (p_DP/5.) + " |A|/|GT|: " + (perc_DP/5.));
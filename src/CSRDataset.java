@@ -0,0 +1,688 @@
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * This class stores a dataset of sequences in compressed sparse row (CSR) format.
+ * Each distinct itemset of the dataset is stored once in a dictionary, whose items are kept in a single
+ * array of int: the itemset d spans the positions [dictStart[d], dictStart[d+1]) of dictItems.
+ * The transactions only store the ids of their itemsets: the transaction t spans the positions
+ * [sequenceStart[t], sequenceStart[t+1]) of itemsetIds.
+ * It also stores, for each item, the sorted array of the transactions in which the item appears: the
+ * transactions of the item alphabet[x] span the positions [postingStart[x], postingStart[x+1]) of postings.
+ * When the dataset has at most 128 distinct items (e.g., the release years of the Netflix datasets), each
+ * itemset of the dictionary is also encoded as a bitmask of one or two long words, so that the containment
+ * of an itemset of a pattern becomes (a & ~b) == 0.
+ * For the long transactions (at least LONG_TRANSACTION itemsets) it also stores a skip structure: for each
+ * item of the transaction, the sorted positions of the itemsets of the transaction in which it appears.
+ * It is used to compute the frequencies of the candidate patterns in SP, EP, DP and ArtificialTest.
+ * When the Builder is created with offHeap true, the flat arrays are stored in direct buffers outside of the
+ * heap, so that large datasets do not increase the heap and the garbage collection pauses, and the buffers
+ * are freed as soon as the close method is called. Otherwise they are stored in arrays of int.
+ */
+public class CSRDataset {
+
+    private static final int LONG_TRANSACTION = 128;
+    // the objects used to free a direct buffer, null if the buffers can only be freed by the garbage collector
+    private static Object unsafe;
+    private static Method invokeCleaner;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner",ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // before Java 9 the buffers are freed through their cleaner
+            invokeCleaner = null;
+        }
+    }
+
+    private Ints itemsetIds;
+    private Ints sequenceStart;
+    private Ints dictItems;
+    private Ints dictStart;
+    private int size;
+    private int[] alphabet;
+    private Ints postingStart;
+    private Ints postings;
+    private long[] masks;
+    private int words;
+    private Ints skipIndex;
+    private Ints skipItemStart;
+    private Ints skipItems;
+    private Ints skipPositionStart;
+    private Ints skipPositions;
+    // the direct buffers of the dataset, null if it is stored in the heap
+    private ObjectArrayList<ByteBuffer> direct;
+
+    private CSRDataset(){
+    }
+
+    /**
+     * Class that stores a flat array of the dataset, in an array of int or, if the dataset is stored
+     * off-heap, in a direct buffer
+     */
+    private static final class Ints {
+        private final int[] array;
+        private final IntBuffer buffer;
+
+        Ints(int[] array){
+            this.array = array;
+            buffer = null;
+        }
+
+        Ints(IntBuffer buffer){
+            array = null;
+            this.buffer = buffer;
+        }
+
+        int get(int i){
+            return array!=null ? array[i] : buffer.get(i);
+        }
+
+        int length(){
+            return array!=null ? array.length : buffer.limit();
+        }
+    }
+
+    /**
+     * Loads a dataset in SPMF format from the provided file
+     * @param   file  the input dataset
+     * @return  the loaded dataset
+     */
+    static CSRDataset load(String file) throws IOException {
+        Builder builder = new Builder();
+        FileReader fr = new FileReader(file);
+        BufferedReader br = new BufferedReader(fr);
+        String line;
+        while((line=br.readLine())!=null){
+            builder.add(line);
+        }
+        br.close();
+        fr.close();
+        return builder.build();
+    }
+
+    /**
+     * Class that builds a dataset adding one transaction at a time
+     */
+    static class Builder {
+        private IntArrayList itemsetIds = new IntArrayList();
+        private IntArrayList sequenceStart = new IntArrayList();
+        private IntArrayList dictItems = new IntArrayList();
+        private IntArrayList dictStart = new IntArrayList();
+        private Object2IntOpenHashMap<IntArrayList> dictionary = new Object2IntOpenHashMap<>();
+        private Int2ObjectOpenHashMap<IntArrayList> transactions = new Int2ObjectOpenHashMap<>();
+        private IntArrayList itemset = new IntArrayList();
+        private int transac = 0;
+        private long postingsSize = 0;
+        // if true, the arrays of the built dataset are stored off-heap
+        private boolean offHeap;
+
+        Builder(){
+            this(false);
+        }
+
+        /**
+         * Creates a builder of datasets stored off-heap or in arrays of int
+         * @param   offHeap  if true, the arrays of the built dataset are stored in direct buffers
+         */
+        Builder(boolean offHeap){
+            this.offHeap = offHeap;
+            dictionary.defaultReturnValue(-1);
+        }
+
+        /**
+         * Adds a transaction to the dataset
+         * @param   line  the transaction in SPMF format
+         */
+        void add(String line){
+            sequenceStart.add(itemsetIds.size());
+            for(int item: parse(line)){
+                if(item!=-1){
+                    itemset.add(item);
+                    IntArrayList list = transactions.get(item);
+                    if(list==null){
+                        list = new IntArrayList();
+                        transactions.put(item,list);
+                    }
+                    if(list.isEmpty() || list.getInt(list.size()-1)!=transac){
+                        list.add(transac);
+                        postingsSize++;
+                    }
+                    continue;
+                }
+                int id = dictionary.getInt(itemset);
+                if(id==-1){
+                    id = dictionary.size();
+                    dictionary.put(itemset.clone(),id);
+                    dictStart.add(dictItems.size());
+                    dictItems.addAll(itemset);
+                }
+                itemsetIds.add(id);
+                itemset.clear();
+            }
+            transac++;
+        }
+
+        /**
+         * Returns the number of transactions added to the dataset
+         * @return  the number of transactions
+         */
+        int size(){
+            return transac;
+        }
+
+        /**
+         * Estimates the number of bytes of the arrays of the dataset built so far
+         * @return  the estimated number of bytes
+         */
+        long bytes(){
+            return 4L*(itemsetIds.size()+sequenceStart.size()+dictItems.size()+dictStart.size()+postingsSize);
+        }
+
+        /**
+         * Builds the dataset with the transactions added so far
+         * @return  the built dataset
+         */
+        CSRDataset build(){
+            CSRDataset dataset = new CSRDataset();
+            if(offHeap) dataset.direct = new ObjectArrayList<>();
+            dataset.itemsetIds = dataset.store(itemsetIds);
+            sequenceStart.add(itemsetIds.size());
+            dataset.sequenceStart = dataset.store(sequenceStart);
+            dataset.dictItems = dataset.store(dictItems);
+            dictStart.add(dictItems.size());
+            dataset.dictStart = dataset.store(dictStart);
+            dataset.size = transac;
+            dataset.alphabet = transactions.keySet().toIntArray();
+            Arrays.sort(dataset.alphabet);
+            IntArrayList postingStart = new IntArrayList(dataset.alphabet.length+1);
+            IntArrayList postings = new IntArrayList((int) postingsSize);
+            for(int item: dataset.alphabet){
+                postingStart.add(postings.size());
+                postings.addAll(transactions.get(item));
+            }
+            postingStart.add(postings.size());
+            dataset.postingStart = dataset.store(postingStart);
+            dataset.postings = dataset.store(postings);
+            dataset.encodeMasks();
+            dataset.buildSkipIndex();
+            return dataset;
+        }
+    }
+
+    /**
+     * Stores the elements of a list in a direct buffer, if the dataset is stored off-heap, or in an array
+     * @param   list  the elements
+     * @return  the stored elements
+     */
+    private Ints store(IntArrayList list){
+        if(direct==null) return new Ints(list.toIntArray());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4*list.size()).order(ByteOrder.nativeOrder());
+        direct.add(buffer);
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.put(list.elements(),0,list.size());
+        return new Ints(ints);
+    }
+
+    /**
+     * Releases the dataset, freeing its direct buffers if it is stored off-heap. The dataset cannot be
+     * used after it is closed
+     */
+    void close(){
+        if(direct!=null){
+            for(ByteBuffer buffer: direct) free(buffer);
+            direct = null;
+        }
+        itemsetIds = sequenceStart = dictItems = dictStart = postingStart = postings = null;
+        skipIndex = skipItemStart = skipItems = skipPositionStart = skipPositions = null;
+    }
+
+    /**
+     * Frees the memory of a direct buffer. If it is not possible, the memory is freed by the garbage
+     * collector when the buffer is no longer referenced
+     * @param   buffer  the direct buffer
+     */
+    private static void free(ByteBuffer buffer){
+        try {
+            if(invokeCleaner!=null) invokeCleaner.invoke(unsafe,buffer);
+            else{
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buffer);
+                if(c!=null) c.getClass().getMethod("clean").invoke(c);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the buffer is left to the garbage collector
+        }
+    }
+
+    /**
+     * Searches a key in the sorted range [from, to) of a flat array, as Arrays.binarySearch
+     * @param   a     the flat array
+     * @param   from  the first position of the range
+     * @param   to    the position after the last one of the range
+     * @param   key   the key
+     * @return  the position of the key, or (-(insertion point) - 1) if it is not in the range
+     */
+    private static int binarySearch(Ints a, int from, int to, int key){
+        int low = from;
+        int high = to-1;
+        while(low<=high){
+            int mid = (low+high)>>>1;
+            int value = a.get(mid);
+            if(value<key) low = mid+1;
+            else if(value>key) high = mid-1;
+            else return mid;
+        }
+        return -(low+1);
+    }
+
+    /**
+     * Builds the skip structure of the transactions with at least LONG_TRANSACTION itemsets.
+     * The skip structure s spans the items [skipItemStart[s], skipItemStart[s+1]) of skipItems, and the
+     * positions of the item x are [skipPositionStart[x], skipPositionStart[x+1]) of skipPositions
+     */
+    private void buildSkipIndex(){
+        IntArrayList skipIndex = new IntArrayList(size);
+        IntArrayList itemStart = new IntArrayList();
+        IntArrayList skipItems = new IntArrayList();
+        IntArrayList positionStart = new IntArrayList();
+        IntArrayList positions = new IntArrayList();
+        for(int t=0;t<size;t++){
+            int length = sequenceStart.get(t+1)-sequenceStart.get(t);
+            if(length<LONG_TRANSACTION){
+                skipIndex.add(-1);
+                continue;
+            }
+            skipIndex.add(itemStart.size());
+            itemStart.add(skipItems.size());
+            LongArrayList occurrences = new LongArrayList();
+            for(int j=0;j<length;j++){
+                int id = itemsetIds.get(sequenceStart.get(t)+j);
+                for(int l=dictStart.get(id);l<dictStart.get(id+1);l++) occurrences.add(((long)dictItems.get(l)<<32)|j);
+            }
+            long[] sorted = occurrences.toLongArray();
+            Arrays.sort(sorted);
+            for(int l=0;l<sorted.length;l++){
+                int item = (int)(sorted[l]>>>32);
+                if(l==0 || item!=(int)(sorted[l-1]>>>32)){
+                    skipItems.add(item);
+                    positionStart.add(positions.size());
+                }
+                positions.add((int)sorted[l]);
+            }
+        }
+        itemStart.add(skipItems.size());
+        positionStart.add(positions.size());
+        this.skipIndex = store(skipIndex);
+        this.skipItemStart = store(itemStart);
+        this.skipItems = store(skipItems);
+        this.skipPositionStart = store(positionStart);
+        this.skipPositions = store(positions);
+    }
+
+    /**
+     * Remaps the items of the dataset to their positions 0..n-1 in the alphabet and, if n is at most 128, encodes each itemset
+     * of the dictionary as a bitmask of words long words
+     */
+    private void encodeMasks(){
+        if(alphabet.length>128) return;
+        words = alphabet.length<=64 ? 1 : 2;
+        int nItemsets = dictStart.length()-1;
+        masks = new long[nItemsets*words];
+        for(int d=0;d<nItemsets;d++){
+            for(int l=dictStart.get(d);l<dictStart.get(d+1);l++){
+                int id = Arrays.binarySearch(alphabet,dictItems.get(l));
+                masks[d*words+(id>>>6)] |= 1L<<(id&63);
+            }
+        }
+    }
+
+    /**
+     * Converts a transaction or a pattern from a string in SPMF format to an array of int, where
+     * the itemsets are separated (and terminated) by -1
+     * @param   s   the transaction or the pattern
+     * @return  the converted transaction
+     */
+    static int[] parse(String s) {
+        IntArrayList tokens = new IntArrayList();
+        int value = 0;
+        boolean inToken = false;
+        boolean negative = false;
+        for(int i=0;i<=s.length();i++){
+            char c = i<s.length() ? s.charAt(i) : ' ';
+            if(c==' '){
+                if(inToken){
+                    if(negative && value==2) break;
+                    tokens.add(negative ? -value : value);
+                }
+                value = 0;
+                inToken = false;
+                negative = false;
+            }
+            else if(c=='-') negative = true;
+            else{
+                value = value*10 + (c-'0');
+                inToken = true;
+            }
+        }
+        if(tokens.isEmpty() || tokens.getInt(tokens.size()-1)!=-1) tokens.add(-1);
+        return tokens.toIntArray();
+    }
+
+    /**
+     * Computes a 64-bit hash of a pattern converted with the parse method. Since the conversion is canonical,
+     * the same pattern has the same hash also when it comes from strings with different spacing
+     * @param   pattern  the pattern
+     * @return  the hash of the pattern
+     */
+    static long hash(int[] pattern){
+        long h = 0x9E3779B97F4A7C15L ^ pattern.length;
+        for(int x: pattern){
+            h = (h ^ (x & 0xFFFFFFFFL)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 29;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns the number of transactions of the dataset
+     * @return  the number of transactions
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * Returns an estimate of the memory used by the dataset, counting the size of its arrays
+     * @return  the estimated size in bytes
+     */
+    long bytes(){
+        long bytes = 4L*(itemsetIds.length()+sequenceStart.length()+dictItems.length()+dictStart.length());
+        bytes += 4L*(postingStart.length()+postings.length());
+        bytes += 4L*alphabet.length;
+        if(masks!=null) bytes += 8L*masks.length;
+        bytes += 4L*(skipIndex.length()+skipItemStart.length()+skipItems.length()+skipPositionStart.length()+skipPositions.length());
+        return bytes;
+    }
+
+    /**
+     * Computes the transactions that contain all the items of the input pattern, intersecting the
+     * sorted arrays of the transactions of its items
+     * @param   pattern  the input pattern
+     * @return  the sorted array of the transactions that must be checked
+     */
+    int[] toCheck(int[] pattern){
+        // the lists, sorted by length, as (length << 32 | position of the item in the alphabet)
+        long[] lists = new long[pattern.length];
+        int n = 0;
+        for(int item: pattern){
+            if(item==-1) continue;
+            int x = Arrays.binarySearch(alphabet,item);
+            if(x<0) return new int[0];
+            lists[n++] = ((long)(postingStart.get(x+1)-postingStart.get(x))<<32)|x;
+        }
+        Arrays.sort(lists,0,n);
+        int first = postingStart.get((int) lists[0]);
+        int[] toCheck = new int[(int)(lists[0]>>>32)];
+        for(int k=0;k<toCheck.length;k++) toCheck[k] = postings.get(first+k);
+        int count = toCheck.length;
+        for(int l=1;l<n && count>0;l++){
+            if(lists[l]==lists[l-1]) continue;
+            int x = (int) lists[l];
+            int end = postingStart.get(x+1);
+            int c = 0;
+            int j = postingStart.get(x);
+            for(int k=0;k<count && j<end;k++){
+                int t = toCheck[k];
+                while(j<end && postings.get(j)<t) j++;
+                if(j<end && postings.get(j)==t) toCheck[c++] = t;
+            }
+            count = c;
+        }
+        return count==toCheck.length ? toCheck : Arrays.copyOf(toCheck,count);
+    }
+
+    /**
+     * Class that stores a row of the containment table, that is the bitset of the itemsets of the
+     * dictionary that contain an itemset of the patterns. Each bit is computed the first time it is
+     * looked up, so that only the itemsets of the checked transactions are compared
+     */
+    private class Row {
+        private int[] itemset;
+        // the bitmask of the itemset, when the itemsets of the dictionary are encoded as bitmasks
+        private long[] encoded;
+        private long[] contained;
+        private long[] known;
+
+        /**
+         * Creates an empty row
+         * @param   itemset  the sorted items of the itemset, which all appear in the dataset
+         */
+        Row(int[] itemset){
+            this.itemset = itemset;
+            int nItemsets = dictStart.length()-1;
+            contained = new long[(nItemsets+63)>>>6];
+            known = new long[contained.length];
+            if(masks!=null){
+                encoded = new long[words];
+                for(int item: itemset){
+                    int id = Arrays.binarySearch(alphabet,item);
+                    encoded[id>>>6] |= 1L<<(id&63);
+                }
+            }
+        }
+
+        /**
+         * Checks if the d-th itemset of the dictionary contains the itemset of the row
+         * @param   d  the id of the itemset of the dictionary
+         * @return  true if the d-th itemset contains the itemset of the row, false otherwise
+         */
+        boolean contains(int d){
+            long bit = 1L<<(d&63);
+            int w = d>>>6;
+            if((known[w]&bit)==0){
+                known[w] |= bit;
+                if(compare(d)) contained[w] |= bit;
+            }
+            return (contained[w]&bit)!=0;
+        }
+
+        private boolean compare(int d){
+            if(encoded!=null){
+                boolean contained = (encoded[0]&~masks[d*words])==0;
+                if(words==2) contained &= (encoded[1]&~masks[d*words+1])==0;
+                return contained;
+            }
+            int l = dictStart.get(d);
+            int lEnd = dictStart.get(d+1);
+            int k = 0;
+            while(k<itemset.length && l<lEnd){
+                if(dictItems.get(l++)==itemset[k]) k++;
+            }
+            return k==itemset.length;
+        }
+    }
+
+    /**
+     * Check if a pattern is a subsequence of the t-th transaction, scanning the ids of the itemsets of
+     * the transaction and looking them up in the containment table
+     * @param   pattern  the rows of the containment table of the itemsets of the pattern
+     * @param   table    the containment table
+     * @param   t        the index of the transaction
+     * @return  true if pattern is a subsequence of the t-th transaction, false otherwise
+     */
+    private boolean isSubsequence(int[] pattern, Row[] table, int t){
+        int i = 0;
+        int end = sequenceStart.get(t+1);
+        for(int j=sequenceStart.get(t);j<end && i<pattern.length;j++){
+            if(table[pattern[i]].contains(itemsetIds.get(j))) i++;
+        }
+        return i==pattern.length;
+    }
+
+    /**
+     * Check if a pattern is a subsequence of a long transaction using its skip structure: for each itemset
+     * of the pattern, it jumps to the next position where all its items co-occur
+     * @param   pattern  the input pattern
+     * @param   s        the index of the skip structure of the transaction
+     * @return  true if pattern is a subsequence of the transaction, false otherwise
+     */
+    private boolean isSubsequence(int[] pattern, int s){
+        int[] entries = new int[pattern.length];
+        for(int k=0;k<pattern.length;k++){
+            if(pattern[k]==-1) continue;
+            entries[k] = binarySearch(skipItems,skipItemStart.get(s),skipItemStart.get(s+1),pattern[k]);
+            if(entries[k]<0) return false;
+        }
+        int pos = 0;
+        int k = 0;
+        while(k<pattern.length){
+            int end = k;
+            while(pattern[end]!=-1) end++;
+            int l = k;
+            while(l<end){
+                int x = entries[l];
+                int next = binarySearch(skipPositions,skipPositionStart.get(x),skipPositionStart.get(x+1),pos);
+                if(next<0) next = -next-1;
+                if(next==skipPositionStart.get(x+1)) return false;
+                if(skipPositions.get(next)>pos){
+                    pos = skipPositions.get(next);
+                    l = k;
+                }
+                else l++;
+            }
+            pos++;
+            k = end+1;
+        }
+        return true;
+    }
+
+    /**
+     * Check if the sequence min is a subsequence of sequence max, where both sequences are
+     * converted with the parse method
+     * @param   min  the first sequence
+     * @param   max  the second sequence
+     * @return  true if min is a subsequence of max, false otherwise
+     */
+    static boolean isSubsequence(int[] min, int[] max){
+        int i = 0;
+        int j = 0;
+        while(i<min.length && j<max.length){
+            int k = i;
+            while(min[k]!=-1 && max[j]!=-1){
+                if(max[j++]==min[k]) k++;
+            }
+            while(max[j]!=-1) j++;
+            j++;
+            if(min[k]==-1) i = k+1;
+        }
+        return i==min.length;
+    }
+
+    /**
+     * Computes the supports of the input patterns in the dataset. The containment table has a row for each
+     * distinct itemset of the patterns, created when a transaction that contains all the items of a pattern
+     * with that itemset is checked, and for each pattern only those transactions are checked
+     * @param   patterns  the input patterns, converted with the parse method
+     * @return  the computed supports
+     */
+    int[] computeSupports(int[][] patterns){
+        return computeSupports(patterns,null);
+    }
+
+    /**
+     * Computes the supports of the input patterns in the dataset, where each transaction is counted as many
+     * times as its weight, as in a dataset resampled with replacement from this one. The transactions with
+     * weight 0 are not checked
+     * @param   patterns  the input patterns, converted with the parse method
+     * @param   weights   the weights of the transactions, or null to count each transaction once
+     * @return  the computed supports
+     */
+    int[] computeSupports(int[][] patterns, int[] weights){
+        return computeSupports(patterns,weights,Metrics.current());
+    }
+
+    /**
+     * Computes the supports of the input patterns in the dataset, as computeSupports, adding to the provided
+     * metrics the transactions checked for at least one pattern and the calls of isSubsequence
+     * @param   patterns  the input patterns, converted with the parse method
+     * @param   weights   the weights of the transactions, or null to count each transaction once
+     * @param   metrics   the metrics of the execution, or null
+     * @return  the computed supports
+     */
+    int[] computeSupports(int[][] patterns, int[] weights, Metrics metrics){
+        Object2IntOpenHashMap<IntArrayList> rows = new Object2IntOpenHashMap<>();
+        rows.defaultReturnValue(-1);
+        IntArrayList itemset = new IntArrayList();
+        int[][] encoded = new int[patterns.length][];
+        for(int p=0;p<patterns.length;p++){
+            IntArrayList row = new IntArrayList();
+            for(int item: patterns[p]){
+                if(item!=-1){
+                    itemset.add(item);
+                    continue;
+                }
+                int id = rows.getInt(itemset);
+                if(id==-1){
+                    id = rows.size();
+                    rows.put(itemset.clone(),id);
+                }
+                row.add(id);
+                itemset.clear();
+            }
+            encoded[p] = row.toIntArray();
+        }
+        // the rows of the containment table are created on first use, so that the itemsets whose items never
+        // co-occur in a transaction of the dataset cost nothing
+        int[][] itemsets = new int[rows.size()][];
+        for(Object2IntOpenHashMap.Entry<IntArrayList> e: rows.object2IntEntrySet()){
+            itemsets[e.getIntValue()] = e.getKey().toIntArray();
+        }
+        Row[] table = new Row[rows.size()];
+        int[] supp = new int[patterns.length];
+        long calls = 0;
+        // the transactions checked for at least one pattern, only tracked for the metrics
+        long[] scanned = metrics==null ? null : new long[(size+63)>>>6];
+        for(int p=0;p<patterns.length;p++){
+            boolean ready = false;
+            for(int t: toCheck(patterns[p])){
+                int w = weights==null ? 1 : weights[t];
+                if(w==0) continue;
+                int s = skipIndex.get(t);
+                if(s==-1 && !ready){
+                    for(int id: encoded[p]){
+                        if(table[id]==null) table[id] = new Row(itemsets[id]);
+                    }
+                    ready = true;
+                }
+                calls++;
+                if(scanned!=null) scanned[t>>>6] |= 1L<<(t&63);
+                if(s==-1 ? isSubsequence(encoded[p],table,t) : isSubsequence(patterns[p],s)) supp[p] += w;
+            }
+        }
+        if(metrics!=null){
+            long transactions = 0;
+            for(long word: scanned) transactions += Long.bitCount(word);
+            metrics.add("transactionsScanned",transactions);
+            metrics.add("isSubsequenceCalls",calls);
+        }
+        return supp;
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FileReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.Arrays;
 
 /**
  * This class implements 3 algorithms to compute the capacity of a sequence:
@@ -35,6 +36,62 @@ public class CapacityTest {
         }
     }
 
+    /**
+     * Private class that implements an itemset of a sequence that, when the sequence contains at most
+     * 128 distinct items, is also encoded as a bitmask of two long words over the items of the sequence,
+     * so that the size of the intersection of two itemsets is computed with a popcount
+     */
+    private static class MaskedItemset {
+        IntArrayList items;
+        long low;
+        long high;
+        boolean masked;
+        MaskedItemset(IntArrayList items) {
+            this.items = items;
+        }
+        int size() {
+            return items.size();
+        }
+
+        /**
+         * Encodes the itemsets of the input sequence as bitmasks if the sequence contains at most
+         * 128 distinct items
+         * @param   sequence  the itemsets of the sequence
+         */
+        static void encode(ObjectArrayList<Pair<MaskedItemset, Integer>> sequence) {
+            IntArrayList all = new IntArrayList();
+            for (Pair<MaskedItemset, Integer> p : sequence) all.addAll(p.getKey().items);
+            int[] alphabet = all.toIntArray();
+            Arrays.sort(alphabet);
+            int n = 0;
+            for (int i = 0; i < alphabet.length; i++) {
+                if (i == 0 || alphabet[i] != alphabet[i - 1]) alphabet[n++] = alphabet[i];
+            }
+            if (n > 128) return;
+            for (Pair<MaskedItemset, Integer> p : sequence) {
+                MaskedItemset itemset = p.getKey();
+                for (int k = 0; k < itemset.items.size(); k++) {
+                    int id = Arrays.binarySearch(alphabet, 0, n, itemset.items.getInt(k));
+                    if (id < 64) itemset.low |= 1L << id;
+                    else itemset.high |= 1L << (id - 64);
+                }
+                itemset.masked = true;
+            }
+        }
+
+        /**
+         * Computes the number of items shared by this itemset and the input itemset
+         * @param   other  the input itemset
+         * @return  the size of the intersection
+         */
+        int intersectionSize(MaskedItemset other) {
+            if (masked && other.masked) return Long.bitCount(low & other.low) + Long.bitCount(high & other.high);
+            IntArrayList intersection = items.clone();
+            intersection.retainAll(other.items);
+            return intersection.size();
+        }
+    }
+
     /**
      * Compute the capacity of a sequence using the naive approach.
      * @param   tr  the input sequence
@@ -118,7 +175,7 @@ public class CapacityTest {
     static BigInteger getCapacity(String tr) {
         String[] tokens = tr.split(" ");
         int length = 0;
-        ObjectArrayList<Pair<IntArrayList, Integer>> sequence = new ObjectArrayList<>();
+        ObjectArrayList<Pair<MaskedItemset, Integer>> sequence = new ObjectArrayList<>();
         IntArrayList itemset = new IntArrayList();
         for (int j = 0; j < tokens.length - 1; j++) {
             int current = Integer.parseInt(tokens[j]);
@@ -126,10 +183,11 @@ public class CapacityTest {
                 length++;
                 itemset.add(current);
             } else {
-                sequence.add(new Pair(itemset, length - itemset.size()));
+                sequence.add(new Pair<>(new MaskedItemset(itemset), length - itemset.size()));
                 itemset = new IntArrayList();
             }
         }
+        MaskedItemset.encode(sequence);
         sequence.sort(((o1, o2) -> {
             if (o1.getKey().size() > o2.getKey().size()) return 1;
             if (o1.getKey().size() < o2.getKey().size()) return -1;
@@ -140,14 +198,13 @@ public class CapacityTest {
         for (int i = 0; i < sequence.size() - 1; i++) {
             BigInteger maxValue = BigInteger.ZERO;
             BigInteger currValue;
-            Pair<IntArrayList, Integer> min = sequence.get(i);
+            Pair<MaskedItemset, Integer> min = sequence.get(i);
             for (int j = i + 1; j < sequence.size(); j++) {
-                Pair<IntArrayList, Integer> max = sequence.get(j);
-                IntArrayList intersection = min.getKey().clone();
-                intersection.retainAll(max.getKey());
-                if (intersection.size() > 0) {
+                Pair<MaskedItemset, Integer> max = sequence.get(j);
+                int intersection = min.getKey().intersectionSize(max.getKey());
+                if (intersection > 0) {
                     currValue = new BigInteger("2").pow(Math.min(max.getValue(), min.getValue()));
-                    currValue = currValue.multiply((new BigInteger("2").pow(intersection.size())).subtract(BigInteger.ONE));
+                    currValue = currValue.multiply((new BigInteger("2").pow(intersection)).subtract(BigInteger.ONE));
                     currValue = currValue.multiply(new BigInteger("2").pow(len - Math.max(max.getValue() + max.getKey().size(), min.getValue() + min.getKey().size())));
                     if (maxValue.compareTo(currValue) < 0) maxValue = currValue;
                 }
@@ -158,7 +215,7 @@ public class CapacityTest {
                 for (int k = i + 1; k < sequence.size(); k++) {
                     Integer curr = sequence.get(k).getValue();
                     if (curr > min.getValue()) {
-                        Pair<IntArrayList, Integer> currPair = sequence.remove(k);
+                        Pair<MaskedItemset, Integer> currPair = sequence.remove(k);
                         sequence.add(k, new Pair<>(currPair.getKey(), curr - min.getKey().size()));
                     }
                 }
@@ -0,0 +1,208 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class stores the state of an execution of SP, EP or DP in a binary checkpoint file, so that a long
+ * execution can be resumed after a failure: the datasets, the upper bounds on the maximum deviations, the
+ * sizes, the current candidates with their frequencies, and the position in the exploration order of the
+ * next dataset to explore.
+ * The file also stores the execution (the family, the execute method and its parameters) and the MD5
+ * checksums of the datasets, so that a state is resumed only by the same execution on the same datasets.
+ * The checksums are computed only when a state is resumed or the first checkpoint is written, and they are
+ * reused while the length and the last modification time of the datasets do not change.
+ * The state is copied when it is saved, and the file is written by a background thread, so that the
+ * exploration of the datasets is not stalled. Each checkpoint is written in a temporary file that then
+ * replaces the previous one, so that the file always contains a complete state.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x67527353;
+    private static final int VERSION = 2;
+
+    private File file;
+    private boolean resume;
+    private ExecutorService writer;
+    private Future<?> last;
+    // the execution and its datasets, set by restore
+    private String run;
+    private String[] datasets;
+    // the checksums of the datasets, computed when they are first needed
+    private String[] checksums;
+
+    /**
+     * Creates a checkpoint
+     * @param   file    the checkpoint file
+     * @param   resume  if true, the execution is resumed from the checkpoint file, if it exists
+     */
+    Checkpoint(String file, boolean resume){
+        this.file = new File(file);
+        this.resume = resume;
+        // the thread stops when it is idle, so that a failed execution still completes its last checkpoint
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1,1,1,TimeUnit.SECONDS,new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        writer = executor;
+    }
+
+    /**
+     * Saves the state of the execution in the background. The execution must be set by restore before the
+     * first checkpoint is saved
+     * @param   datasets   the input datasets
+     * @param   mu         the upper bounds on the maximum deviations
+     * @param   size       the sizes of the datasets
+     * @param   candidate  the current candidates with their frequencies
+     * @param   next       the position in the exploration order of the next dataset to explore
+     */
+    void save(String[] datasets, double[] mu, int[] size, Map<String,double[]> candidate, int next){
+        String[] keys = new String[candidate.size()];
+        double[][] freqs = new double[keys.length][];
+        int k = 0;
+        for(Map.Entry<String,double[]> e: candidate.entrySet()){
+            keys[k] = e.getKey();
+            freqs[k++] = e.getValue().clone();
+        }
+        double[] muCopy = mu.clone();
+        int[] sizeCopy = size.clone();
+        String runCopy = run;
+        last = writer.submit(() -> {
+            try {
+                write(runCopy,datasets,muCopy,sizeCopy,keys,freqs,next);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Writes a state in the checkpoint file
+     * @param   run        the execution
+     * @param   datasets   the input datasets
+     * @param   mu         the upper bounds on the maximum deviations
+     * @param   size       the sizes of the datasets
+     * @param   keys       the current candidates
+     * @param   freqs      the frequencies of the current candidates
+     * @param   next       the position in the exploration order of the next dataset to explore
+     */
+    private void write(String run, String[] datasets, double[] mu, int[] size, String[] keys, double[][] freqs, int next) throws IOException {
+        String[] checksums = checksums();
+        File tmp = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),1<<16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(run);
+        out.writeInt(datasets.length);
+        for(int i=0;i<datasets.length;i++){
+            out.writeUTF(datasets[i]);
+            out.writeUTF(checksums[i]);
+            out.writeDouble(mu[i]);
+            out.writeInt(size[i]);
+        }
+        out.writeInt(next);
+        out.writeInt(keys.length);
+        for(int k=0;k<keys.length;k++){
+            out.writeUTF(keys[k]);
+            for(double f: freqs[k]) out.writeDouble(f);
+        }
+        out.close();
+        Files.move(tmp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the checksums of the datasets of the execution, computing them the first time
+     * @return  the checksums of the datasets
+     */
+    private synchronized String[] checksums() throws IOException {
+        if(checksums==null){
+            String[] computed = new String[datasets.length];
+            for(int i=0;i<datasets.length;i++) computed[i] = ArtefactStore.checksum(new File(datasets[i]));
+            checksums = computed;
+        }
+        return checksums;
+    }
+
+    /**
+     * Sets the execution whose state is saved, and restores its state from the checkpoint file, if resume
+     * is true and the file exists and was written by the same execution on the same datasets, with the same
+     * content. The candidates are restored only if the whole file is read
+     * @param   run        the execution, with the family, the execute method and its parameters
+     * @param   datasets   the input datasets
+     * @param   mu         the array where the upper bounds on the maximum deviations are restored
+     * @param   size       the array where the sizes of the datasets are restored
+     * @param   candidate  the map where the candidates with their frequencies are restored
+     * @return  the position in the exploration order of the next dataset to explore, or -1 if the state
+     *          has not been restored
+     */
+    int restore(String run, String[] datasets, double[] mu, int[] size, Map<String,double[]> candidate) throws IOException {
+        synchronized(this){
+            this.run = run;
+            this.datasets = datasets;
+            checksums = null;
+        }
+        if(!resume || !file.exists()) return -1;
+        String[] checksums = checksums();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),1<<16));
+        try {
+            if(in.readInt()!=MAGIC || in.readInt()!=VERSION || !in.readUTF().equals(run) || in.readInt()!=datasets.length){
+                return ignored("different execution");
+            }
+            double[] muCopy = new double[datasets.length];
+            int[] sizeCopy = new int[datasets.length];
+            for(int i=0;i<datasets.length;i++){
+                if(!in.readUTF().equals(datasets[i])) return ignored("different datasets");
+                if(!in.readUTF().equals(checksums[i])) return ignored(datasets[i] + " has changed");
+                muCopy[i] = in.readDouble();
+                sizeCopy[i] = in.readInt();
+            }
+            int next = in.readInt();
+            int n = in.readInt();
+            HashMap<String,double[]> restored = new HashMap<>();
+            for(int k=0;k<n;k++){
+                String key = in.readUTF();
+                double[] freq = new double[datasets.length];
+                for(int i=0;i<freq.length;i++) freq[i] = in.readDouble();
+                restored.put(key,freq);
+            }
+            candidate.putAll(restored);
+            System.arraycopy(muCopy,0,mu,0,mu.length);
+            System.arraycopy(sizeCopy,0,size,0,size.length);
+            System.out.println("Resumed from " + file + ": " + n + " candidates, next dataset " + next);
+            return next;
+        } catch (EOFException e) {
+            return ignored("truncated file");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reports that the checkpoint file cannot be resumed
+     * @param   reason  the reason
+     * @return  -1, since the state has not been restored
+     */
+    private int ignored(String reason){
+        System.out.println("Ignored " + file + ": " + reason);
+        return -1;
+    }
+
+    /**
+     * Waits for the last checkpoint to be written and deletes the checkpoint file, since the execution
+     * is completed
+     */
+    void close() throws IOException {
+        try {
+            if(last!=null) last.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+        writer.shutdown();
+        file.delete();
+    }
+}
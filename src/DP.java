@@ -1,5 +1,3 @@
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import java.io.*;
@@ -16,11 +14,34 @@ public class DP {
     private String[] datasets;
     private int[] size;
     private double[] mu;
+    // if true, the datasets are loaded in a single index and explored in a single traversal
+    boolean singlePass = false;
+    // if not null, the state of the execution is saved in the checkpoint after the mining and after each explored dataset
+    Checkpoint checkpoint = null;
+    // if true, the datasets are streamed one shard at a time during the exploration, instead of being loaded in memory
+    boolean outOfCore = false;
+    // if true, the datasets loaded during the exploration are stored off-heap (see CSRDataset)
+    boolean offHeap = false;
+    // the performance metrics of the execution, exported in a JSON report when the patterns are written
+    Metrics metrics = new Metrics();
+    // the position in the exploration order of the next dataset to explore
+    private int next = 0;
     private Object2ObjectOpenHashMap<String,double[]> candidate;
     DP(String[] datasets){
+        this(datasets,new int[datasets.length],new double[datasets.length]);
+    }
+
+    /**
+     * Creates an instance that shares the sizes and the maximum deviations of the datasets with other
+     * instances, so that they are computed only once
+     * @param   datasets  the input datasets
+     * @param   size      the sizes of the datasets
+     * @param   mu        the upper bounds on the maximum deviations of the datasets
+     */
+    DP(String[] datasets, int[] size, double[] mu){
         this.datasets = datasets;
-        size = new int[datasets.length];
-        mu = new double[datasets.length];
+        this.size = size;
+        this.mu = mu;
         candidate = new Object2ObjectOpenHashMap<>();
     }
 
@@ -34,20 +55,49 @@ public class DP {
         String[] datasets = {"../data/2005q1_SPMF.txt","../data/2005q2_SPMF.txt","../data/2005q3_SPMF.txt","../data/2005q4_SPMF.txt"};
         String fileOut = "../data/2005q_DP_01.txt";
         DP dp = new DP(datasets);
+        // set dp.outOfCore = true to stream the datasets during the exploration when they do not fit in memory
+        // the state of the execution is saved in a checkpoint file: run with --resume to continue a failed execution
+        dp.checkpoint = new Checkpoint(fileOut+".ckpt",Arrays.asList(args).contains("--resume"));
+        // run with --off-heap to store the datasets outside of the heap during the exploration
+        dp.offHeap = Arrays.asList(args).contains("--off-heap");
         dp.execute(delta,epsilon,fileOut);
 
         // use dp.executeTheta(delta,epsilon,theta,fileOut) to mine DP with a minimum frequency threshold for the first dataset.
 
         // use dp.executeThetaAll(delta,epsilon,theta,fileOut) to mine DP with a minimum frequency threshold for all datasets.
+
+        // set dp.singlePass = true before the execution to verify the candidates against all datasets in a single traversal.
+    }
+
+    /**
+     * Returns the mined descending sequential patterns
+     * @return  the patterns
+     */
+    Set<String> patterns(){
+        return candidate.keySet();
     }
 
     /**
-     * Writes the mined descending sequential patterns in the provided file
+     * Writes the mined descending sequential patterns in the provided file, and the JSON report of the metrics
+     * of the execution, if they are enabled, in the file given by Metrics.reportFile
      * @param  file  the output file
      */
-    private void write(String file) throws IOException {
+    void write(String file) throws IOException {
+        Metrics.Phase phase = metrics.start("write");
         FileWriter fw = new FileWriter(file);
         BufferedWriter bw = new BufferedWriter(fw);
+        write(bw);
+        bw.close();
+        fw.close();
+        phase.stop();
+        if(metrics.enabled()) metrics.write(Metrics.reportFile(file));
+    }
+
+    /**
+     * Writes the mined descending sequential patterns in the provided writer, one per line
+     * @param  bw  the output writer
+     */
+    void write(BufferedWriter bw) throws IOException {
         for (String sp: candidate.keySet()) {
             double[] freq = candidate.get(sp);
             bw.write(sp);
@@ -56,8 +106,6 @@ public class DP {
             }
             bw.write("\n");
         }
-        bw.close();
-        fw.close();
     }
 
     /**
@@ -67,25 +115,45 @@ public class DP {
      * @param  fileOut  the output file
      */
     void execute(double delta, double epsilon, String fileOut) throws IOException {
-        double[] minFreq = new double[datasets.length];
-        for(int i=0;i<datasets.length;i++){
-            computeMaxDev(i,delta/(datasets.length*1.));
+        if(!restore("execute",delta,epsilon)){
+            for(int i=0;i<datasets.length;i++){
+                computeMaxDev(i,delta/(datasets.length*1.));
+            }
+            double[] minFreq = minFrequencies(epsilon);
+            mine(0,minFreq[0]);
         }
+        exploreDatasets(epsilon);
+        write(fileOut);
+        if(checkpoint!=null) checkpoint.close();
+    }
+
+    /**
+     * Computes the minimum frequency that a descending sequential pattern must have in each dataset,
+     * without minimum frequency threshold
+     * @param   epsilon  the emerging threshold
+     * @return  the minimum frequencies
+     */
+    double[] minFrequencies(double epsilon){
+        double[] minFreq = new double[datasets.length];
         int n = datasets.length-1;
         minFreq[n] = 0;
         for(int i=n-1;i>=0;i--){
             minFreq[i] = mu[i] + mu[i+1] + minFreq[i+1] + epsilon;
         }
-        String fileC = datasets[0].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
-        mining(datasets[0],fileC,minFreq[0]);
-        loadCandidate(fileC);
-        for(int j=1;j<datasets.length;j++){
-            exploreDataset(j,epsilon);
-        }
-        write(fileOut);
-        File del = new File(fileC);
-        del.delete();
+        return minFreq;
+    }
+
+    /**
+     * Computes the minimum frequency that a descending sequential pattern must have in each dataset,
+     * using a minimum frequency threshold for the first dataset
+     * @param   epsilon  the emerging threshold
+     * @param   theta    the minimum frequency threshold
+     * @return  the minimum frequencies
+     */
+    double[] minFrequencies(double epsilon, double theta){
+        double[] minFreq = minFrequencies(epsilon);
+        minFreq[0] = Math.max(minFreq[0],theta+mu[0]);
+        return minFreq;
     }
 
     /**
@@ -97,25 +165,16 @@ public class DP {
      * @param  fileOut  the output file
      */
     void executeTheta(double delta, double epsilon,double theta, String fileOut) throws IOException {
-        double[] minFreq = new double[datasets.length];
-        for(int i=0;i<datasets.length;i++){
-            computeMaxDev(i,delta/(datasets.length*1.));
-        }
-        minFreq[datasets.length-1] = 0;
-        for(int i=datasets.length-2;i>=0;i--){
-            minFreq[i] = mu[i] + mu[i+1] + minFreq[i+1] + epsilon;
-        }
-        minFreq[0] = Math.max(minFreq[0],theta+mu[0]);
-        String fileC = datasets[0].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
-        mining(datasets[0],fileC,minFreq[0]);
-        loadCandidate(fileC);
-        for(int j=1;j<datasets.length;j++){
-            exploreDataset(j,epsilon);
+        if(!restore("executeTheta",delta,epsilon,theta)){
+            for(int i=0;i<datasets.length;i++){
+                computeMaxDev(i,delta/(datasets.length*1.));
+            }
+            double[] minFreq = minFrequencies(epsilon,theta);
+            mine(0,minFreq[0]);
         }
+        exploreDatasets(epsilon);
         write(fileOut);
-        File del = new File(fileC);
-        del.delete();
+        if(checkpoint!=null) checkpoint.close();
     }
 
     /**
@@ -127,149 +186,153 @@ public class DP {
      * @param  fileOut  the output file
      */
     void executeThetaAll(double delta, double epsilon,double theta, String fileOut) throws IOException {
-        double[] minFreq = new double[datasets.length];
-        for(int i=0;i<datasets.length;i++){
-            computeMaxDev(i,delta/(datasets.length*1.));
-        }
-        minFreq[datasets.length-1] = theta + mu[datasets.length-1];
-        for(int i=datasets.length-2;i>=0;i--){
-            minFreq[i] = mu[i] + mu[i+1] + minFreq[i+1] + epsilon;
-        }
-        String fileC = datasets[0].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
-        mining(datasets[0],fileC,minFreq[0]);
-        loadCandidate(fileC);
-        for(int j=1;j<datasets.length;j++){
-            exploreDataset(j,epsilon);
+        if(!restore("executeThetaAll",delta,epsilon,theta)){
+            double[] minFreq = new double[datasets.length];
+            for(int i=0;i<datasets.length;i++){
+                computeMaxDev(i,delta/(datasets.length*1.));
+            }
+            minFreq[datasets.length-1] = theta + mu[datasets.length-1];
+            for(int i=datasets.length-2;i>=0;i--){
+                minFreq[i] = mu[i] + mu[i+1] + minFreq[i+1] + epsilon;
+            }
+            mine(0,minFreq[0]);
         }
+        exploreDatasets(epsilon);
         write(fileOut);
-        File del = new File(fileC);
-        del.delete();
+        if(checkpoint!=null) checkpoint.close();
     }
 
     /**
-     * Converts a transaction from a string to an array of itemsets, that are arrays of int, and updates
-     * an index structure that stores the transactions in which an itemset appears
-     * @param   s         the transaction
-     * @param   transac   the index of the transaction
-     * @param   itemsMap  an index structure that stores the transactions in which an itemset appears   
-     * @return  the converted transaction
+     * Explores the i-th dataset to prune the starting candidate
+     * @param   i         the index of the dataset to explore
+     * @param   epsilon   the emerging threshold
      */
-    private Object[] convertAndUpdate(String s, int transac, Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap){
-        String[] splited = s.split("-2")[0].split(" -1 ");
-        Object[] transaction = new Object[splited.length];
-        int j = 0;
-        for(String itemset_string: splited){
-            String[] splited2 = itemset_string.split(" ");
-            int[] itemset = new int[splited2.length];
-            int i = 0;
-            for(String item_string: splited2){
-                int item = Integer.parseInt(item_string);
-                itemset[i++] = item;
-                if(itemsMap.containsKey(item)){
-                    itemsMap.get(item).add(transac);
-                }
-                else{
-                    IntOpenHashSet transactions = new IntOpenHashSet();
-                    transactions.add(transac);
-                    itemsMap.put(item,transactions);
-                }
+    private void exploreDataset(int i,double epsilon) throws IOException {
+        Metrics.Phase phase = metrics.start("exploreDataset["+i+"]");
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[] frequencies = ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,datasets[i])[0];
+        int pruned = 0;
+        for(int k=0;k<patterns.length;k++){
+            if(!update(candidate.get(keys.get(k)),i,frequencies[k],epsilon)){
+                candidate.remove(keys.get(k));
+                pruned++;
             }
-            transaction[j++] = itemset;
         }
-        return transaction;
+        metrics.add("candidates["+i+"]",patterns.length);
+        metrics.add("pruned["+i+"]",pruned);
+        phase.stop();
     }
 
     /**
-     * Explores the i-th dataset to prune the starting candidate
-     * @param   i         the index of the dataset to explore
+     * Explores all the datasets, except the mined one, to prune the starting candidate.
+     * If singlePass is true, all the datasets are loaded in a single index and the frequencies of each
+     * candidate in all of them are computed in a single traversal, then the candidate is checked against
+     * the datasets in the same order used by the sequential exploration
      * @param   epsilon   the emerging threshold
-    */
-    private void exploreDataset(int i,double epsilon) throws IOException {
-        ObjectArrayList<Object[]> dataset = new ObjectArrayList<>();
-        Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap = new Int2ObjectOpenHashMap<>();
-        FileReader fr = new FileReader(datasets[i]);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
-        int transac = 0;
-        while((line=br.readLine())!=null){
-            dataset.add(convertAndUpdate(line,transac++,itemsMap));
+     */
+    private void exploreDatasets(double epsilon) throws IOException {
+        int[] order = new int[datasets.length-1];
+        for(int j=1;j<datasets.length;j++) order[j-1] = j;
+        order = Arrays.copyOfRange(order,next,order.length);
+        if(!singlePass){
+            for(int o=0;o<order.length;o++){
+                exploreDataset(order[o],epsilon);
+                if(checkpoint!=null) checkpoint.save(datasets,mu,size,candidate,next+o+1);
+            }
+            return;
         }
-        br.close();
-        fr.close();
-        Set<String> remove = new HashSet<>();
-        for (String s: candidate.keySet()){
-            IntOpenHashSet toCheck = null;
-            String[] splited = s.split(" -1 ");
-            Object[] transaction = new Object[splited.length];
-            int k = 0;
-            for(String itemset_string: splited){
-                String[] splited2 = itemset_string.split(" ");
-                int[] itemset = new int[splited2.length];
-                int l = 0;
-                for(String item_string: splited2){
-                    int item = Integer.parseInt(item_string);
-                    itemset[l++] = item;
-                    if(!itemsMap.containsKey(item)) toCheck = new IntOpenHashSet();
-                    else {
-                        if (toCheck == null) {
-                            toCheck = itemsMap.get(item).clone();
-                        } else {
-                            toCheck.retainAll(itemsMap.get(item));
-                        }
-                    }
+        Metrics.Phase phase = metrics.start("exploreDatasets");
+        String[] files = new String[order.length];
+        for(int o=0;o<order.length;o++) files[o] = datasets[order[o]];
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[][] frequencies = ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,files);
+        int[] checked = new int[order.length];
+        int[] pruned = new int[order.length];
+        for(int k=0;k<patterns.length;k++){
+            double[] freq = candidate.get(keys.get(k));
+            for(int o=0;o<order.length;o++){
+                checked[o]++;
+                if(!update(freq,order[o],frequencies[o][k],epsilon)){
+                    pruned[o]++;
+                    candidate.remove(keys.get(k));
+                    break;
                 }
-                transaction[k++] = itemset;
             }
-            double freq = computeFrequency(transaction,dataset,toCheck);
-            if(candidate.get(s)[i-1]-mu[i-1]-(freq+mu[i])<=epsilon){
-                remove.add(s);
-            }
-            else candidate.get(s)[i] = freq;
         }
-        for(String s: remove) candidate.remove(s);
+        for(int o=0;o<order.length;o++){
+            metrics.add("candidates["+order[o]+"]",checked[o]);
+            metrics.add("pruned["+order[o]+"]",pruned[o]);
+        }
+        phase.stop();
     }
 
     /**
-     * Check if the sequence min is a subsequence of sequence max
-     * @param   min  the first sequence
-     * @param   max  the second sequence
-     * @return  true if min is a subsequence of max, false otherwise
+     * Selects the descending sequential patterns from a table with the supports of the candidates in all
+     * the datasets: a candidate is kept if it is frequent in the first dataset, and if it is not pruned
+     * checking the other datasets in the same order used by the exploration
+     * @param   table     the supports of the candidates
+     * @param   minFreq   the minimum frequencies of the datasets
+     * @param   epsilon   the emerging threshold
      */
-    private boolean isSubsequence(Object[] min,Object[] max){
-        if(min.length>max.length) return false;
-        int i = 0;
-        int j = 0;
-        while(i<min.length && j<max.length) {
-            int[] itemsetMin = (int[])min[i];
-            int[] itemsetMax = (int[])max[j];
-            if (itemsetMin.length <= itemsetMax.length) {
-                int l = 0;
-                int k = 0;
-                while (k < itemsetMin.length && l < itemsetMax.length) {
-                    if (itemsetMax[l++]==itemsetMin[k]) k++;
-                }
-                if (k == itemsetMin.length) i++;
-            }
-            j++;
+    void select(FrequencyTable table, double[] minFreq, double epsilon){
+        for(int p=0;p<table.size();p++){
+            if(!table.isFrequent(p,0,minFreq[0])) continue;
+            double[] freq = new double[datasets.length];
+            freq[0] = table.frequency(p,0);
+            boolean descending = true;
+            for(int j=1;j<datasets.length && descending;j++) descending = update(freq,j,table.frequency(p,j),epsilon);
+            if(descending) candidate.put(table.pattern(p),freq);
         }
-        return i == min.length;
     }
 
     /**
-     * Computes the frequency of the input sequence in the input dataset considering the transactions
-     * stored in the index structure
-     * @param   s         the input sequence
-     * @param   dataset   the input dataset
-     * @param   toCheck   an index structure that stores the transactions in which an itemset appears
-     * @return  the computed frequency
+     * Checks if a candidate is still a descending sequential pattern given its frequency in the i-th dataset,
+     * and stores the frequency
+     * @param   freqs     the frequencies of the candidate
+     * @param   i         the index of the dataset
+     * @param   freq      the frequency of the candidate in the i-th dataset
+     * @param   epsilon   the emerging threshold
+     * @return  false if the candidate must be pruned, true otherwise
      */
-    private double computeFrequency(Object[] s, ObjectArrayList<Object[]> dataset, IntOpenHashSet toCheck){
-        int supp = 0;
-        for (int i: toCheck) {
-            if(isSubsequence(s,dataset.get(i))) supp++;
-        }
-        return supp/(dataset.size()*1.);
+    private boolean update(double[] freqs, int i, double freq, double epsilon){
+        if(freqs[i-1]-mu[i-1]-(freq+mu[i])<=epsilon) return false;
+        freqs[i] = freq;
+        return true;
+    }
+
+    /**
+     * Restores the state of the execution from the checkpoint, if it must be resumed and it was saved by
+     * the same execute method with the same parameters
+     * @param   method  the execute method
+     * @param   params  the parameters of the execute method
+     * @return  true if the state has been restored, false otherwise
+     */
+    private boolean restore(String method, double... params) throws IOException {
+        if(checkpoint==null) return false;
+        next = checkpoint.restore("DP."+method+" "+Arrays.toString(params),datasets,mu,size,candidate);
+        if(next>=0) return true;
+        next = 0;
+        return false;
+    }
+
+    /**
+     * Mines the index-th dataset and loads the mined FSP as starting candidate
+     * @param   index     the index of the dataset to mine
+     * @param   theta     the minimum frequency threshold
+     */
+    private void mine(int index, double theta) throws IOException {
+        Metrics.Phase phase = metrics.start("mining");
+        String fileC = GRosSo.minedFile(datasets[index]);
+        metrics.add("minedPatterns",mining(datasets[index],fileC,theta));
+        loadCandidate(fileC);
+        File del = new File(fileC);
+        del.delete();
+        phase.stop();
+        if(checkpoint!=null) checkpoint.save(datasets,mu,size,candidate,0);
     }
 
     /**
@@ -300,7 +363,8 @@ public class DP {
      * @param   index    the index of the dataset
      * @param   delta    the confidence parameter
      */
-    private void computeMaxDev(int index, double delta) {
+    void computeMaxDev(int index, double delta) {
+        Metrics.Phase phase = metrics.start("computeMaxDev");
         int datasetSize = 0;
         int sIndex = 0;
         ArrayList<Triple> orderedSet = new ArrayList<>();
@@ -314,10 +378,10 @@ public class DP {
                 if (!set.contains(line)) {
                     BigInteger cap = CapacityTest.getCapacity(line);
                     if (cap.compareTo(new BigInteger("2").pow(sIndex).subtract(BigInteger.ONE)) > 0) {
-                        Object[] curr = convert(line);
+                        int[] curr = CSRDataset.parse(line);
                         boolean sub = false;
                         for (Triple t : orderedSet) {
-                            sub = isSubsequence(curr, t.getValue());
+                            sub = CSRDataset.isSubsequence(curr, t.getValue());
                             if (sub || (cap.compareTo(t.getCapacity()) > 0)) break;
                         }
                         if (!sub) {
@@ -342,28 +406,7 @@ public class DP {
         } catch (Exception e) {
             e.printStackTrace();
         }
-    }
-
-    /**
-     * Converts a transaction from a string to an array of itemsets, that are arrays of int
-     * @param   s   the transaction
-     * @return  the converted transaction
-     */
-    private Object[] convert(String s) {
-        String[] splited = s.split("-2")[0].split(" -1 ");
-        Object[] transaction = new Object[splited.length];
-        int j = 0;
-        for (String itemset_string : splited) {
-            String[] splited2 = itemset_string.split(" ");
-            int[] itemset = new int[splited2.length];
-            int i = 0;
-            for (String item_string : splited2) {
-                int item = Integer.parseInt(item_string);
-                itemset[i++] = item;
-            }
-            transaction[j++] = itemset;
-        }
-        return transaction;
+        phase.stop();
     }
 
     /**
@@ -388,10 +431,10 @@ public class DP {
      * Private class that implements a simple triple structure
      */
     private class Triple implements Comparable<Triple> {
-        Object[] val;
+        int[] val;
         private String sp;
         private BigInteger cap;
-        Triple(String sp, BigInteger cap, Object[] val) {
+        Triple(String sp, BigInteger cap, int[] val) {
             this.sp = sp;
             this.cap = cap;
             this.val = val;
@@ -402,7 +445,7 @@ public class DP {
         String getSequence() {
             return sp;
         }
-        Object[] getValue() {
+        int[] getValue() {
             return val;
         }
         public int compareTo(Triple p2) {
@@ -0,0 +1,244 @@
+import java.io.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class keeps the datasets resident in memory among different executions of gRosSo. For each dataset
+ * it stores the sequences mined by PrefixSpan, the ShardedDataset used to compute the supports of the
+ * candidates, the size and the upper bound on the VC-dimension used to compute the maximum deviation.
+ * When the estimated memory of the datasets exceeds the budget, the least recently used ones are evicted.
+ * A dataset is loaded again if its file has been modified after it was loaded. The datasets that are not
+ * stored in a file, such as the resampled ones, are added with put and are never evicted.
+ * The datasets are loaded outside of the lock of the cache, so that the resident datasets can be taken while
+ * another one is loading, and a dataset requested by more threads at the same time is loaded only once.
+ * Each dataset taken with get is leased to the caller until it is released, so that an evicted dataset is
+ * closed only when the executions that use it are done.
+ */
+public class DatasetCache {
+
+    private long budget;
+    // if true, the indexes of the loaded datasets are stored off-heap
+    private boolean offHeap;
+    private long used;
+    private LinkedHashMap<String,Entry> entries;
+    // the datasets being loaded
+    private ConcurrentHashMap<String,FutureTask<Entry>> loading;
+
+    /**
+     * Creates an empty cache
+     * @param   budget  the maximum estimated memory in bytes of the resident datasets
+     */
+    DatasetCache(long budget){
+        this(budget,false);
+    }
+
+    /**
+     * Creates an empty cache whose datasets are stored off-heap or in arrays of int
+     * @param   budget   the maximum estimated memory in bytes of the resident datasets
+     * @param   offHeap  if true, the indexes of the loaded datasets are stored off-heap (see CSRDataset)
+     */
+    DatasetCache(long budget, boolean offHeap){
+        this.budget = budget;
+        this.offHeap = offHeap;
+        entries = new LinkedHashMap<>(16,0.75f,true);
+        loading = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Class that stores a resident dataset
+     */
+    static class Entry {
+        // the sequences used by PrefixSpan: they must be copied before mining, since PrefixSpan modifies them
+        SequenceDatabase database;
+        ShardedDataset index;
+        int size;
+        int dim;
+        long bytes;
+        long lastModified;
+        // true if the dataset is not stored in a file, so that it is never loaded again or evicted
+        boolean pinned;
+    }
+
+    /**
+     * Returns the dataset stored in the provided file, loading it if it is not resident, and evicting
+     * the least recently used datasets if the budget is exceeded. The dataset is leased to the caller, that
+     * must release it when it does not use it anymore
+     * @param   file  the input dataset
+     * @return  the resident dataset
+     */
+    Entry get(String file) throws IOException {
+        String key = new File(file).getCanonicalPath();
+        long lastModified = new File(key).lastModified();
+        while(true){
+            synchronized(this){
+                Entry entry = entries.get(key);
+                if(entry!=null && (entry.pinned || entry.lastModified==lastModified)){
+                    entry.index.retain();
+                    return entry;
+                }
+            }
+            FutureTask<Entry> task = new FutureTask<>(() -> {
+                Entry loaded = load(key,offHeap);
+                loaded.lastModified = lastModified;
+                return loaded;
+            });
+            FutureTask<Entry> running = loading.putIfAbsent(key,task);
+            if(running==null){
+                running = task;
+                task.run();
+            }
+            Entry entry;
+            try {
+                entry = running.get();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                loading.remove(key,running);
+                if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+            synchronized(this){
+                if(running==task){
+                    loading.remove(key,task);
+                    Entry old = entries.put(key,entry);
+                    if(old!=null){
+                        used -= old.bytes;
+                        old.index.close();
+                    }
+                    used += entry.bytes;
+                    evict(entry);
+                }
+                // the dataset loaded by another thread may have been already evicted or replaced
+                if(entries.get(key)==entry){
+                    entry.index.retain();
+                    return entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a dataset taken with get
+     * @param   entry  the dataset
+     */
+    void release(Entry entry){
+        entry.index.close();
+    }
+
+    /**
+     * Evicts the least recently used datasets, except the pinned ones and the provided one, until the
+     * budget is not exceeded. The evicted datasets are closed when the executions that use them release
+     * them, while their shards are still kept by the resampled datasets that share them
+     * @param   entry  the dataset just loaded
+     */
+    private void evict(Entry entry){
+        Iterator<Entry> it = entries.values().iterator();
+        while(used>budget && it.hasNext()){
+            Entry lru = it.next();
+            if(lru==entry) break;
+            if(lru.pinned) continue;
+            used -= lru.bytes;
+            it.remove();
+            lru.index.close();
+        }
+    }
+
+    /**
+     * Checks if the dataset stored in the provided file is resident and up to date
+     * @param   file  the input dataset
+     * @return  true if the dataset is resident, false otherwise
+     */
+    synchronized boolean contains(String file) throws IOException {
+        String key = new File(file).getCanonicalPath();
+        Entry entry = entries.get(key);
+        return entry!=null && (entry.pinned || entry.lastModified==new File(key).lastModified());
+    }
+
+    /**
+     * Adds a dataset that is not stored in a file, such as a dataset resampled from a resident one, with the
+     * provided name. The dataset is never loaded again or evicted, until it is removed, and the cache takes
+     * the reference to its index, that is released when it is removed
+     * @param   name   the name of the dataset, used as the file of the dataset by the executions
+     * @param   entry  the dataset
+     */
+    synchronized void put(String name, Entry entry) throws IOException {
+        String key = new File(name).getCanonicalPath();
+        entry.pinned = true;
+        Entry old = entries.put(key,entry);
+        if(old!=null){
+            used -= old.bytes;
+            old.index.close();
+        }
+        used += entry.bytes;
+    }
+
+    /**
+     * Removes a dataset from the cache, releasing the reference of the cache to its index
+     * @param   name  the file or the name of the dataset
+     */
+    synchronized void remove(String name) throws IOException {
+        Entry entry = entries.remove(new File(name).getCanonicalPath());
+        if(entry!=null){
+            used -= entry.bytes;
+            entry.index.close();
+        }
+    }
+
+    /**
+     * Returns the number of resident datasets
+     * @return  the number of resident datasets
+     */
+    synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * Returns whether the indexes of the datasets are stored off-heap
+     * @return  true if the indexes are stored off-heap
+     */
+    boolean offHeap(){
+        return offHeap;
+    }
+
+    /**
+     * Returns the estimated memory of the resident datasets
+     * @return  the estimated memory in bytes
+     */
+    synchronized long bytes(){
+        return used;
+    }
+
+    /**
+     * Returns the estimated memory of a resident dataset
+     * @param   file  the file or the name of the dataset
+     * @return  the estimated memory in bytes, or 0 if the dataset is not resident
+     */
+    synchronized long bytes(String file) throws IOException {
+        Entry entry = entries.get(new File(file).getCanonicalPath());
+        return entry==null ? 0 : entry.bytes;
+    }
+
+    /**
+     * Loads the dataset stored in the provided file and computes its size and its upper bound on the
+     * VC-dimension, which does not depend on the confidence parameter
+     * @param   file     the input dataset
+     * @param   offHeap  if true, the index of the dataset is stored off-heap
+     * @return  the loaded dataset
+     */
+    static Entry load(String file, boolean offHeap) throws IOException {
+        Entry entry = new Entry();
+        entry.database = new SequenceDatabase();
+        entry.database.loadFile(file);
+        entry.index = ShardedDataset.load(offHeap,file);
+        int[] size = new int[1];
+        SP sp = new SP(new String[]{file},size,new double[1]);
+        entry.dim = sp.computeMaxDev(0,1.);
+        entry.size = size[0];
+        entry.bytes = entry.index.bytes();
+        for(int[] sequence: entry.database.getSequences()) entry.bytes += 4L*sequence.length+16;
+        return entry;
+    }
+}
@@ -0,0 +1,158 @@
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import java.io.*;
+
+/**
+ * This class stores the supports of a set of candidate patterns in all the datasets of a sequence.
+ * The candidates are the FSP mined from one of the datasets, while their supports in the other datasets
+ * are computed in a single traversal of a ShardedDataset, so that different families of patterns can be
+ * selected from the same table without exploring the datasets again.
+ */
+public class FrequencyTable {
+
+    private ObjectArrayList<String> patterns;
+    // supp[i][p] is the support of the p-th pattern in the i-th dataset
+    private int[][] supp;
+    private int[] size;
+
+    /**
+     * Creates a table with the provided supports
+     * @param   patterns  the candidate patterns
+     * @param   supp      the supports, where supp[i][p] is the support of the p-th pattern in the i-th dataset
+     * @param   size      the sizes of the datasets
+     */
+    FrequencyTable(ObjectArrayList<String> patterns, int[][] supp, int[] size){
+        this.patterns = patterns;
+        this.supp = supp;
+        this.size = size;
+    }
+
+    /**
+     * Loads the FSP mined from the index-th dataset and computes their supports in all the other datasets
+     * @param   datasets  the input datasets
+     * @param   index     the index of the mined dataset
+     * @param   minedSize the size of the mined dataset
+     * @param   file      the file that contains the FSP mined from the index-th dataset
+     * @param   offHeap   if true, the other datasets are stored off-heap while their supports are computed
+     * @return  the table with the supports of the FSP in all the datasets
+     */
+    static FrequencyTable load(String[] datasets, int index, int minedSize, String file, boolean offHeap) throws IOException {
+        FrequencyTable table = loadMined(datasets.length,index,minedSize,file);
+        if(datasets.length>1){
+            String[] files = new String[datasets.length-1];
+            int o = 0;
+            for(int i=0;i<datasets.length;i++){
+                if(i!=index) files[o++] = datasets[i];
+            }
+            ShardedDataset dataset = ShardedDataset.load(offHeap,files);
+            int[][] explored = dataset.computeSupports(table.parse());
+            o = 0;
+            for(int i=0;i<datasets.length;i++){
+                if(i==index) continue;
+                table.supp[i] = explored[o];
+                table.size[i] = dataset.size(o++);
+            }
+            dataset.close();
+        }
+        return table;
+    }
+
+    /**
+     * Loads the FSP mined from the index-th dataset and computes their supports in all the other datasets,
+     * which are already loaded in memory
+     * @param   datasets  the loaded datasets (the index-th one is not used)
+     * @param   index     the index of the mined dataset
+     * @param   minedSize the size of the mined dataset
+     * @param   file      the file that contains the FSP mined from the index-th dataset
+     * @return  the table with the supports of the FSP in all the datasets
+     */
+    static FrequencyTable load(ShardedDataset[] datasets, int index, int minedSize, String file) throws IOException {
+        FrequencyTable table = loadMined(datasets.length,index,minedSize,file);
+        int[][] patterns = table.parse();
+        for(int i=0;i<datasets.length;i++){
+            if(i==index) continue;
+            table.supp[i] = datasets[i].computeSupports(patterns)[0];
+            table.size[i] = datasets[i].size(0);
+        }
+        return table;
+    }
+
+    /**
+     * Loads the FSP mined from the index-th dataset with their supports in that dataset
+     * @param   n         the number of datasets
+     * @param   index     the index of the mined dataset
+     * @param   minedSize the size of the mined dataset
+     * @param   file      the file that contains the FSP mined from the index-th dataset
+     * @return  the table, with the supports only for the index-th dataset
+     */
+    private static FrequencyTable loadMined(int n, int index, int minedSize, String file) throws IOException {
+        ObjectArrayList<String> patterns = new ObjectArrayList<>();
+        IntArrayList minedSupp = new IntArrayList();
+        FileReader fr = new FileReader(file);
+        BufferedReader br = new BufferedReader(fr);
+        String line;
+        while((line=br.readLine())!=null){
+            String[] splited = line.split("#SUP: ");
+            patterns.add(splited[0]);
+            minedSupp.add(Integer.parseInt(splited[1].trim()));
+        }
+        br.close();
+        fr.close();
+        int[][] supp = new int[n][];
+        int[] size = new int[n];
+        supp[index] = minedSupp.toIntArray();
+        size[index] = minedSize;
+        return new FrequencyTable(patterns,supp,size);
+    }
+
+    /**
+     * Converts the candidate patterns with the CSRDataset.parse method
+     * @return  the converted patterns
+     */
+    private int[][] parse(){
+        int[][] parsed = new int[patterns.size()][];
+        for(int p=0;p<parsed.length;p++) parsed[p] = CSRDataset.parse(patterns.get(p));
+        return parsed;
+    }
+
+    /**
+     * Returns the number of candidate patterns
+     * @return  the number of candidates
+     */
+    int size(){
+        return patterns.size();
+    }
+
+    /**
+     * Returns the p-th candidate pattern, in the SPMF format used by PrefixSpan
+     * @param   p  the index of the candidate
+     * @return  the candidate pattern
+     */
+    String pattern(int p){
+        return patterns.get(p);
+    }
+
+    /**
+     * Returns the frequency of the p-th candidate in the i-th dataset
+     * @param   p  the index of the candidate
+     * @param   i  the index of the dataset
+     * @return  the frequency
+     */
+    double frequency(int p, int i){
+        return supp[i][p]/(1.*size[i]);
+    }
+
+    /**
+     * Checks if the p-th candidate would be mined by PrefixSpan from the i-th dataset with the provided
+     * minimum frequency threshold
+     * @param   p        the index of the candidate
+     * @param   i        the index of the dataset
+     * @param   theta    the minimum frequency threshold
+     * @return  true if the support of the candidate is at least the minimum support, false otherwise
+     */
+    boolean isFrequent(int p, int i, double theta){
+        int minSupp = (int) Math.ceil(theta * size[i]);
+        if(minSupp==0) minSupp = 1;
+        return supp[i][p]>=minSupp;
+    }
+}
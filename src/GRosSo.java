@@ -0,0 +1,476 @@
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * This class executes gRosSo to mine the stable, emerging and descending sequential patterns from the same
+ * sequence of datasets in a single run. The maximum deviations are computed once for each dataset, the
+ * FSP are mined once from a single dataset, using the lowest threshold required by the three families,
+ * and the supports of the candidates in all the datasets are computed in a single traversal. Each family
+ * then selects its patterns from the same candidates, with the same results of SP, EP and DP.
+ */
+public class GRosSo {
+
+    private String[] datasets;
+    private int[] size;
+    private double[] mu;
+    // the upper bounds on the VC-dimension of the datasets, which do not depend on delta
+    private int[] dim;
+    // if not null, the datasets are taken from the cache instead of being read from their files
+    private DatasetCache cache;
+    // the datasets leased from the cache by computeMaxDev, and released at the end of each execution
+    private DatasetCache.Entry[] entries;
+    // if not null (and no cache is used), the bounds, the mined FSP and the supports of the candidates are
+    // stored in the ArtefactStore and reused by the following executions on the same datasets
+    ArtefactStore store = null;
+    // the performance metrics of the executions, shared with the SP, EP and DP that export them when written
+    Metrics metrics = new Metrics();
+    // if true (and no cache is used), the datasets are stored off-heap while the candidates are counted
+    boolean offHeap = false;
+    GRosSo(String[] datasets){
+        this(datasets,null);
+    }
+
+    /**
+     * Creates an instance that takes the datasets, their sizes and their upper bounds on the VC-dimension
+     * from the provided cache
+     * @param   datasets  the input datasets
+     * @param   cache     the cache with the resident datasets
+     */
+    GRosSo(String[] datasets, DatasetCache cache){
+        this.datasets = datasets;
+        this.cache = cache;
+        size = new int[datasets.length];
+        mu = new double[datasets.length];
+        dim = new int[datasets.length];
+    }
+
+    /**
+     * This main mines the stable, emerging and descending sequential patterns using the chosen parameters
+     * from the input datasets and stores the results in the provided output files
+     */
+    public static void main(String[] args) throws IOException {
+        // the parameters
+        double theta = 0.2;
+        double alpha = 0.1;
+        double epsilon = 0.01;
+        double delta = 0.1;
+        // the input datasets
+        String[] datasets = {"../data/2005q1_SPMF.txt","../data/2005q2_SPMF.txt","../data/2005q3_SPMF.txt","../data/2005q4_SPMF.txt"};
+        // the output datasets
+        String fileSP = "../data/2005q_SP_1_2.txt";
+        String fileEP = "../data/2005q_EP_01.txt";
+        String fileDP = "../data/2005q_DP_01.txt";
+        GRosSo grosso = new GRosSo(datasets);
+        // run with --off-heap to store the datasets outside of the heap while the candidates are counted
+        grosso.offHeap = Arrays.asList(args).contains("--off-heap");
+        grosso.execute(delta,alpha,epsilon,theta,fileSP,fileEP,fileDP);
+
+        // set grosso.store = new ArtefactStore("../data/artefacts") before the execution to reuse the computations
+        // of the previous executions on the datasets that did not change.
+
+        // use grosso.sweep(deltas,alphas,epsilons,thetas,fileOut) to mine the patterns for all the combinations of
+        // the provided parameters, mining the datasets only once.
+    }
+
+    /**
+     * Executes gRosSo to mine stable sequential patterns using a minimum frequency threshold for all datasets,
+     * and emerging and descending sequential patterns without minimum frequency threshold
+     * @param  delta    the confidence parameter
+     * @param  alpha    the error threshold of the SP
+     * @param  epsilon  the emerging threshold of the EP and DP
+     * @param  theta    the minimum frequency threshold of the SP
+     * @param  fileSP   the output file for the SP
+     * @param  fileEP   the output file for the EP
+     * @param  fileDP   the output file for the DP
+     */
+    void execute(double delta, double alpha, double epsilon, double theta, String fileSP, String fileEP, String fileDP) throws IOException {
+        SP sp = new SP(datasets,size,mu);
+        EP ep = new EP(datasets,size,mu);
+        DP dp = new DP(datasets,size,mu);
+        sp.metrics = metrics;
+        ep.metrics = metrics;
+        dp.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreqSP = sp.minFrequencies(theta);
+            double[] minFreqEP = ep.minFrequencies(epsilon);
+            double[] minFreqDP = dp.minFrequencies(epsilon);
+            double[] minFreq = new double[datasets.length];
+            for(int i=0;i<datasets.length;i++){
+                minFreq[i] = Math.min(minFreqSP[i],Math.min(minFreqEP[i],minFreqDP[i]));
+            }
+            FrequencyTable table = mine(minFreq);
+            sp.select(table,minFreqSP,alpha,theta);
+            ep.select(table,minFreqEP,epsilon);
+            dp.select(table,minFreqDP,epsilon);
+            sp.write(fileSP);
+            ep.write(fileEP);
+            dp.write(fileDP);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo to mine stable sequential patterns using a minimum frequency threshold for all datasets
+     * @param  delta    the confidence parameter
+     * @param  alpha    the error threshold
+     * @param  theta    the minimum frequency threshold
+     * @return  the SP mined
+     */
+    SP executeSP(double delta, double alpha, double theta) throws IOException {
+        SP sp = new SP(datasets,size,mu);
+        sp.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreq = sp.minFrequencies(theta);
+            sp.select(mine(minFreq),minFreq,alpha,theta);
+            return sp;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo to mine emerging sequential patterns without minimum frequency threshold
+     * @param  delta    the confidence parameter
+     * @param  epsilon  the emerging threshold
+     * @return  the EP mined
+     */
+    EP executeEP(double delta, double epsilon) throws IOException {
+        EP ep = new EP(datasets,size,mu);
+        ep.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreq = ep.minFrequencies(epsilon);
+            ep.select(mine(minFreq),minFreq,epsilon);
+            return ep;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo to mine emerging sequential patterns using a minimum frequency threshold for the last dataset
+     * @param  delta    the confidence parameter
+     * @param  epsilon  the emerging threshold
+     * @param  theta    the minimum frequency threshold
+     * @return  the EP mined
+     */
+    EP executeEP(double delta, double epsilon, double theta) throws IOException {
+        EP ep = new EP(datasets,size,mu);
+        ep.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreq = ep.minFrequencies(epsilon,theta);
+            ep.select(mine(minFreq),minFreq,epsilon);
+            return ep;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo to mine descending sequential patterns without minimum frequency threshold
+     * @param  delta    the confidence parameter
+     * @param  epsilon  the emerging threshold
+     * @return  the DP mined
+     */
+    DP executeDP(double delta, double epsilon) throws IOException {
+        DP dp = new DP(datasets,size,mu);
+        dp.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreq = dp.minFrequencies(epsilon);
+            dp.select(mine(minFreq),minFreq,epsilon);
+            return dp;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo to mine descending sequential patterns using a minimum frequency threshold for the first dataset
+     * @param  delta    the confidence parameter
+     * @param  epsilon  the emerging threshold
+     * @param  theta    the minimum frequency threshold
+     * @return  the DP mined
+     */
+    DP executeDP(double delta, double epsilon, double theta) throws IOException {
+        DP dp = new DP(datasets,size,mu);
+        dp.metrics = metrics;
+        try {
+            computeMaxDev(delta);
+            double[] minFreq = dp.minFrequencies(epsilon,theta);
+            dp.select(mine(minFreq),minFreq,epsilon);
+            return dp;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes gRosSo for all the combinations of the provided parameters, mining the datasets only once.
+     * The SP are mined for each combination of delta, alpha and theta, and the EP and DP for each
+     * combination of delta and epsilon, with the same results of the corresponding executions of
+     * SP.executeThetaAll, EP.execute and DP.execute. Each result is stored in a file named after the
+     * output file, the family and the values of the parameters (e.g., out_EP_0.1_0.01.txt)
+     * @param  deltas    the confidence parameters
+     * @param  alphas    the error thresholds of the SP
+     * @param  epsilons  the emerging thresholds of the EP and DP
+     * @param  thetas    the minimum frequency thresholds of the SP
+     * @param  fileOut   the prefix of the output files
+     */
+    void sweep(double[] deltas, double[] alphas, double[] epsilons, double[] thetas, String fileOut) throws IOException {
+        SP sp = new SP(datasets,size,mu);
+        try {
+            computeMaxDev(deltas[0]);
+            // the candidates must include the patterns of every combination, so the datasets are mined using
+            // the lowest minimum frequencies among all of them
+            double[] minFreq = new double[datasets.length];
+            Arrays.fill(minFreq,Double.MAX_VALUE);
+            for(double delta: deltas){
+                setMaxDev(delta);
+                if(alphas.length>0){
+                    for(double theta: thetas) min(minFreq,sp.minFrequencies(theta));
+                }
+                for(double epsilon: epsilons){
+                    min(minFreq,new EP(datasets,size,mu).minFrequencies(epsilon));
+                    min(minFreq,new DP(datasets,size,mu).minFrequencies(epsilon));
+                }
+            }
+            FrequencyTable table = mine(minFreq);
+            String prefix = fileOut.split("\\.txt")[0];
+            for(double delta: deltas){
+                setMaxDev(delta);
+                for(double alpha: alphas){
+                    for(double theta: thetas){
+                        SP curr = new SP(datasets,size,mu);
+                        curr.metrics = metrics;
+                        curr.select(table,curr.minFrequencies(theta),alpha,theta);
+                        curr.write(prefix+"_SP_"+delta+"_"+alpha+"_"+theta+".txt");
+                    }
+                }
+                for(double epsilon: epsilons){
+                    EP ep = new EP(datasets,size,mu);
+                    ep.metrics = metrics;
+                    ep.select(table,ep.minFrequencies(epsilon),epsilon);
+                    ep.write(prefix+"_EP_"+delta+"_"+epsilon+".txt");
+                    DP dp = new DP(datasets,size,mu);
+                    dp.metrics = metrics;
+                    dp.select(table,dp.minFrequencies(epsilon),epsilon);
+                    dp.write(prefix+"_DP_"+delta+"_"+epsilon+".txt");
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Computes the upper bounds on the maximum deviations of all the datasets, reading the datasets or
+     * taking their upper bounds on the VC-dimension from the cache
+     * @param   delta    the confidence parameter
+     */
+    private void computeMaxDev(double delta) throws IOException {
+        Metrics.Phase phase = metrics.start("computeMaxDev");
+        if(cache==null){
+            SP sp = new SP(datasets,size,mu);
+            for(int i=0;i<datasets.length;i++){
+                if(store!=null){
+                    int[] bounds = store.loadBounds(store.checksum(datasets[i]));
+                    if(bounds!=null){
+                        size[i] = bounds[0];
+                        dim[i] = bounds[1];
+                        continue;
+                    }
+                }
+                dim[i] = sp.computeMaxDev(i,delta/(datasets.length*1.));
+                if(store!=null) store.saveBounds(store.checksum(datasets[i]),size[i],dim[i]);
+            }
+            if(store!=null) setMaxDev(delta);
+            phase.stop();
+            return;
+        }
+        entries = new DatasetCache.Entry[datasets.length];
+        for(int i=0;i<datasets.length;i++){
+            entries[i] = cache.get(datasets[i]);
+            size[i] = entries[i].size;
+            dim[i] = entries[i].dim;
+        }
+        setMaxDev(delta);
+        phase.stop();
+    }
+
+    /**
+     * Releases the datasets leased from the cache by computeMaxDev, including those of an execution
+     * that failed before all of them were taken
+     */
+    private void release(){
+        if(entries==null) return;
+        for(DatasetCache.Entry entry: entries){
+            if(entry!=null) cache.release(entry);
+        }
+        entries = null;
+    }
+
+    /**
+     * Computes the upper bounds on the maximum deviations of all the datasets for the provided confidence
+     * parameter, using the upper bounds on the VC-dimension already computed
+     * @param   delta    the confidence parameter
+     */
+    private void setMaxDev(double delta){
+        double datasetDelta = delta/(datasets.length*1.);
+        for(int i=0;i<datasets.length;i++){
+            mu[i] = maxDev(size[i],dim[i],datasetDelta);
+        }
+    }
+
+    /**
+     * Computes the upper bound on the maximum deviation of a dataset, as in computeMaxDev of SP, EP and DP
+     * @param   size     the size of the dataset
+     * @param   dim      the upper bound on the VC-dimension of the dataset
+     * @param   delta    the confidence parameter for the dataset
+     * @return  the upper bound on the maximum deviation
+     */
+    static double maxDev(int size, int dim, double delta){
+        return Math.sqrt(1 / (2. * size) * (dim + Math.log(1. / delta)));
+    }
+
+    /**
+     * Stores in minFreq the element-wise minimum between minFreq and curr
+     * @param   minFreq  the current minimum frequencies
+     * @param   curr     the minimum frequencies to compare
+     */
+    private static void min(double[] minFreq, double[] curr){
+        for(int i=0;i<minFreq.length;i++) minFreq[i] = Math.min(minFreq[i],curr[i]);
+    }
+
+    /**
+     * Mines the dataset with the highest value in minFreq, using that value as minimum frequency
+     * threshold, and computes the supports of the mined FSP in all the datasets
+     * @param   minFreq  the lowest minimum frequencies required in each dataset
+     * @return  the table with the supports of the mined FSP
+     */
+    private FrequencyTable mine(double[] minFreq) throws IOException {
+        // the dataset where the required minimum frequency is the highest gives the smallest set of candidates
+        int index = 0;
+        for(int i=1;i<datasets.length;i++){
+            if(minFreq[i]>minFreq[index]) index = i;
+        }
+        if(cache!=null){
+            File fileC = File.createTempFile("grosso","_mined.txt");
+            try {
+                Metrics.Phase phase = metrics.start("mining");
+                AlgoPrefixSpan alg = new AlgoPrefixSpan();
+                alg.runAlgorithm(entries[index].database.copy(),minFreq[index],fileC.getPath());
+                metrics.add("minedPatterns",alg.patternCount);
+                phase.stop();
+                phase = metrics.start("exploreDatasets");
+                ShardedDataset[] indexes = new ShardedDataset[datasets.length];
+                for(int i=0;i<datasets.length;i++) indexes[i] = entries[i].index;
+                FrequencyTable table = FrequencyTable.load(indexes,index,size[index],fileC.getPath());
+                metrics.add("candidates",table.size());
+                phase.stop();
+                return table;
+            } finally {
+                fileC.delete();
+            }
+        }
+        if(store!=null) return mine(index,minFreq[index]);
+        String fileC = minedFile(datasets[index]);
+        mining(datasets[index],fileC,minFreq[index]);
+        Metrics.Phase phase = metrics.start("exploreDatasets");
+        FrequencyTable table = FrequencyTable.load(datasets,index,size[index],fileC,offHeap);
+        metrics.add("candidates",table.size());
+        phase.stop();
+        File del = new File(fileC);
+        del.delete();
+        return table;
+    }
+
+    /**
+     * Creates a new file, in the folder of the provided dataset, where the FSP mined from the dataset are stored.
+     * The file is created with a unique name, so that the executions that mine the same dataset at the same
+     * time never write the same file
+     * @param   dataset  the mined dataset
+     * @return  the name of the file
+     */
+    static String minedFile(String dataset) throws IOException {
+        File file = new File(dataset).getAbsoluteFile();
+        return File.createTempFile(file.getName().split("\\.txt")[0]+"_mined",".txt",file.getParentFile()).getPath();
+    }
+
+    /**
+     * Returns the FSP of the index-th dataset with their supports in all the datasets, using the artefacts
+     * of the store: the dataset is mined only if it was not already mined with a lower threshold, and only
+     * the candidates not already counted in a dataset are counted
+     * @param   index    the index of the dataset to mine
+     * @param   theta    the minimum frequency threshold
+     * @return  the table with the supports of the FSP
+     */
+    private FrequencyTable mine(int index, double theta) throws IOException {
+        String checksum = store.checksum(datasets[index]);
+        if(store.minedTheta(checksum)>theta){
+            String fileC = minedFile(datasets[index]);
+            mining(datasets[index],fileC,theta);
+            store.saveMined(checksum,theta,fileC);
+            File del = new File(fileC);
+            del.delete();
+        }
+        Metrics.Phase phase = metrics.start("exploreDatasets");
+        int minSupp = (int) Math.ceil(theta * size[index]);
+        if(minSupp==0) minSupp = 1;
+        Object2IntOpenHashMap<String> minedSupp = new Object2IntOpenHashMap<>();
+        ObjectArrayList<String> candidates = store.loadMined(checksum,minSupp,minedSupp);
+        int[][] supp = new int[datasets.length][candidates.size()];
+        for(int p=0;p<candidates.size();p++) supp[index][p] = minedSupp.getInt(candidates.get(p));
+        for(int i=0;i<datasets.length;i++){
+            if(i==index) continue;
+            checksum = store.checksum(datasets[i]);
+            Object2IntOpenHashMap<String> known = store.loadSupports(checksum);
+            ObjectArrayList<String> missing = new ObjectArrayList<>();
+            for(String s: candidates){
+                if(!known.containsKey(s)) missing.add(s);
+            }
+            if(!missing.isEmpty()){
+                int[][] patterns = new int[missing.size()][];
+                for(int p=0;p<patterns.length;p++) patterns[p] = CSRDataset.parse(missing.get(p));
+                ShardedDataset dataset = ShardedDataset.load(offHeap,datasets[i]);
+                int[] counted = dataset.computeSupports(patterns)[0];
+                dataset.close();
+                store.saveSupports(checksum,missing,counted);
+                metrics.add("candidates["+i+"]",patterns.length);
+                for(int p=0;p<patterns.length;p++) known.put(missing.get(p),counted[p]);
+            }
+            for(int p=0;p<candidates.size();p++) supp[i][p] = known.getInt(candidates.get(p));
+        }
+        metrics.add("candidates",candidates.size());
+        phase.stop();
+        return new FrequencyTable(candidates,supp,size);
+    }
+
+    /**
+     * Mines the input dataset and stored the FSP in the output file using the PrefixSpan algorithm
+     * @param   fileIn    the input dataset
+     * @param   fileFSP   the output file to store the FSP
+     * @param   theta     the minimum frequency threshold
+     * @return  the number of mined FSP
+     */
+    private int mining(String fileIn, String fileFSP, double theta){
+        Metrics.Phase phase = metrics.start("mining");
+        try {
+            AlgoPrefixSpan alg = new AlgoPrefixSpan();
+            alg.runAlgorithm(fileIn, theta, fileFSP);
+            metrics.add("minedPatterns",alg.patternCount);
+            return alg.patternCount;
+        }catch(IOException e) {
+            e.printStackTrace();
+        } finally {
+            phase.stop();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class executes gRosSo as a long-running daemon that accepts queries on a socket bound to localhost.
+ * The datasets, their indexes and their upper bounds on the VC-dimension stay resident in a DatasetCache
+ * among different queries, so that a query on datasets already loaded does not read them again.
+ * Each query is a line with the family of patterns, the parameters and the input datasets:
+ *   SP delta alpha theta dataset_1 ... dataset_n
+ *   EP delta epsilon dataset_1 ... dataset_n
+ *   DP delta epsilon dataset_1 ... dataset_n
+ * The mined patterns are streamed back one per line, in the same format of the output files of SP, EP
+ * and DP, followed by a line END. If the query fails, the answer is a single line ERROR with the cause.
+ * The same connection can be used for more queries.
+ */
+public class GRosSoServer {
+
+    private int port;
+    private DatasetCache cache;
+
+    GRosSoServer(int port, long budget, boolean offHeap){
+        this.port = port;
+        cache = new DatasetCache(budget,offHeap);
+    }
+
+    /**
+     * This main starts the daemon on the provided port (default 4040), using the provided memory budget
+     * in MB for the resident datasets (default half of the maximum memory of the JVM). With the option
+     * --off-heap the indexes of the resident datasets are stored outside of the heap
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 4040;
+        long budget = Runtime.getRuntime().maxMemory()/2;
+        boolean offHeap = Arrays.asList(args).contains("--off-heap");
+        args = Arrays.stream(args).filter(a -> !a.startsWith("--")).toArray(String[]::new);
+        if(args.length>0) port = Integer.parseInt(args[0]);
+        if(args.length>1) budget = Long.parseLong(args[1])<<20;
+        GRosSoServer server = new GRosSoServer(port,budget,offHeap);
+        server.start();
+    }
+
+    /**
+     * Accepts the connections on localhost and serves each of them in a different thread
+     */
+    void start() throws IOException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        ServerSocket serverSocket = new ServerSocket(port,50,InetAddress.getLoopbackAddress());
+        System.out.println("gRosSo listening on " + serverSocket.getLocalSocketAddress());
+        while(true){
+            Socket socket = serverSocket.accept();
+            pool.submit(() -> serve(socket));
+        }
+    }
+
+    /**
+     * Answers the queries received from a connection until it is closed
+     * @param   socket  the connection
+     */
+    private void serve(Socket socket){
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            String line;
+            while((line=br.readLine())!=null){
+                if(line.trim().isEmpty()) continue;
+                try {
+                    query(line.trim().split("\\s+"),bw);
+                    bw.write("END\n");
+                } catch (Exception e) {
+                    bw.write("ERROR " + e + "\n");
+                }
+                bw.flush();
+            }
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Executes a query and writes the mined patterns in the provided writer
+     * @param   query  the family of patterns, the parameters and the input datasets
+     * @param   bw     the output writer
+     */
+    private void query(String[] query, BufferedWriter bw) throws IOException {
+        String family = query[0];
+        double delta = Double.parseDouble(query[1]);
+        if(family.equals("SP")){
+            double alpha = Double.parseDouble(query[2]);
+            double theta = Double.parseDouble(query[3]);
+            GRosSo grosso = new GRosSo(Arrays.copyOfRange(query,4,query.length),cache);
+            grosso.executeSP(delta,alpha,theta).write(bw);
+        }
+        else if(family.equals("EP") || family.equals("DP")){
+            double epsilon = Double.parseDouble(query[2]);
+            GRosSo grosso = new GRosSo(Arrays.copyOfRange(query,3,query.length),cache);
+            if(family.equals("EP")) grosso.executeEP(delta,epsilon).write(bw);
+            else grosso.executeDP(delta,epsilon).write(bw);
+        }
+        else throw new IllegalArgumentException("unknown family " + family);
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs many executions of gRosSo and of the observed frequency-based approaches concurrently in
+ * the same JVM. All the jobs share the same DatasetCache, so that a dataset used by more jobs is loaded only
+ * once. Each job has an estimated memory, given by the datasets it has to load that are not resident
+ * (datasetFactor times the size of their files), by a copy of its largest dataset used by PrefixSpan, and by
+ * its candidates (the expected number of candidates of the job, provided when it is submitted, times the
+ * number of its datasets times candidateBytes). The jobs are started in the order they are submitted as long
+ * as the sum of the estimated memory of the running jobs fits in the budget.
+ * A job whose estimate exceeds the budget is started only when no other job is running, and the number of
+ * running jobs can also be bounded, e.g., by the number of cores.
+ */
+public class JobScheduler {
+
+    // the estimated bytes of a candidate for each dataset (its key, its parsed pattern and its frequency)
+    static long candidateBytes = 64;
+    // the ratio between the memory of a loaded dataset and the size of its file
+    static long datasetFactor = 3;
+
+    private DatasetCache cache;
+    private ExecutorService pool;
+    private long budget;
+    private int maxRunning;
+    private long reserved;
+    private int running;
+    private ArrayDeque<Job> queue;
+
+    /**
+     * Creates a scheduler
+     * @param   cacheBudget  the maximum estimated memory in bytes of the shared datasets
+     * @param   budget       the maximum estimated memory in bytes of the running jobs
+     */
+    JobScheduler(long cacheBudget, long budget){
+        this(new DatasetCache(cacheBudget),Integer.MAX_VALUE,budget);
+    }
+
+    /**
+     * Creates a scheduler whose jobs share the provided cache, that may already contain datasets not stored
+     * in files, such as the resampled ones
+     * @param   cache       the shared datasets
+     * @param   maxRunning  the maximum number of jobs running at the same time
+     * @param   budget      the maximum estimated memory in bytes of the running jobs
+     */
+    JobScheduler(DatasetCache cache, int maxRunning, long budget){
+        this.cache = cache;
+        pool = Executors.newCachedThreadPool();
+        this.maxRunning = maxRunning;
+        this.budget = budget;
+        queue = new ArrayDeque<>();
+    }
+
+    /**
+     * This main mines the SP, EP and DP of the five sequences of Netflix datasets concurrently
+     */
+    public static void main(String[] args) throws Exception {
+        double theta = 0.2;
+        double alpha = 0.1;
+        double epsilon = 0.01;
+        double delta = 0.1;
+        String[][] sequences = {
+                {"../data/2004q1_SPMF.txt","../data/2004q2_SPMF.txt","../data/2004q3_SPMF.txt","../data/2004q4_SPMF.txt"},
+                {"../data/2005q1_SPMF.txt","../data/2005q2_SPMF.txt","../data/2005q3_SPMF.txt","../data/2005q4_SPMF.txt"},
+                {"../data/2004t1_SPMF.txt","../data/2004t2_SPMF.txt","../data/2004t3_SPMF.txt"},
+                {"../data/2005t1_SPMF.txt","../data/2005t2_SPMF.txt","../data/2005t3_SPMF.txt"},
+                {"../data/2003_SPMF.txt","../data/2004_SPMF.txt","../data/2005_SPMF.txt"}};
+        String[] names = {"2004q","2005q","2004t","2005t","2003-2005y"};
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        // run with --off-heap to store the indexes of the resident datasets outside of the heap
+        DatasetCache cache = new DatasetCache(maxMemory/4,Arrays.asList(args).contains("--off-heap"));
+        JobScheduler scheduler = new JobScheduler(cache,Integer.MAX_VALUE,maxMemory/2);
+        // the expected number of candidates of each job
+        long candidates = 1000000;
+        Future<?>[] jobs = new Future<?>[3*sequences.length];
+        for(int s=0;s<sequences.length;s++){
+            jobs[3*s] = scheduler.submitSP(sequences[s],candidates,delta,alpha,theta,"../data/"+names[s]+"_SP.txt");
+            jobs[3*s+1] = scheduler.submitEP(sequences[s],candidates,delta,epsilon,"../data/"+names[s]+"_EP.txt");
+            jobs[3*s+2] = scheduler.submitDP(sequences[s],candidates,delta,epsilon,"../data/"+names[s]+"_DP.txt");
+        }
+        for(Future<?> job: jobs) job.get();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Interface of the task executed by a job
+     */
+    interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Class that stores a submitted job
+     */
+    private static class Job {
+        Task task;
+        long estimate;
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Job(Task task, long estimate){
+            this.task = task;
+            this.estimate = estimate;
+        }
+    }
+
+    /**
+     * Submits a job that mines stable sequential patterns using a minimum frequency threshold for all datasets
+     * @param  datasets   the input datasets
+     * @param  candidates the expected number of candidates of the job
+     * @param  delta      the confidence parameter
+     * @param  alpha      the error threshold
+     * @param  theta      the minimum frequency threshold
+     * @param  fileOut    the output file
+     * @return  the future completed at the end of the job
+     */
+    Future<Void> submitSP(String[] datasets, long candidates, double delta, double alpha, double theta, String fileOut) throws IOException {
+        return submit(datasets,candidates,() -> new GRosSo(datasets,cache).executeSP(delta,alpha,theta).write(fileOut));
+    }
+
+    /**
+     * Submits a job that mines emerging sequential patterns without minimum frequency threshold
+     * @param  datasets   the input datasets
+     * @param  candidates the expected number of candidates of the job
+     * @param  delta      the confidence parameter
+     * @param  epsilon    the emerging threshold
+     * @param  fileOut    the output file
+     * @return  the future completed at the end of the job
+     */
+    Future<Void> submitEP(String[] datasets, long candidates, double delta, double epsilon, String fileOut) throws IOException {
+        return submit(datasets,candidates,() -> new GRosSo(datasets,cache).executeEP(delta,epsilon).write(fileOut));
+    }
+
+    /**
+     * Submits a job that mines descending sequential patterns without minimum frequency threshold
+     * @param  datasets   the input datasets
+     * @param  candidates the expected number of candidates of the job
+     * @param  delta      the confidence parameter
+     * @param  epsilon    the emerging threshold
+     * @param  fileOut    the output file
+     * @return  the future completed at the end of the job
+     */
+    Future<Void> submitDP(String[] datasets, long candidates, double delta, double epsilon, String fileOut) throws IOException {
+        return submit(datasets,candidates,() -> new GRosSo(datasets,cache).executeDP(delta,epsilon).write(fileOut));
+    }
+
+    /**
+     * Submits a job that mines patterns using the observed frequency-based approaches
+     * @param  datasets   the input datasets
+     * @param  candidates the expected number of candidates of the job
+     * @param  size       the sizes of the input datasets
+     * @param  family     the family of patterns (SP, EP or DP)
+     * @param  theta      the minimum frequency threshold used for all the datasets
+     * @param  param      the error threshold (SP) or the emerging threshold (EP and DP)
+     * @param  fileOut    the output file
+     * @return  the future completed at the end of the job
+     */
+    Future<Void> submitArtificial(String[] datasets, long candidates, int[] size, String family, double theta, double param, String fileOut) throws IOException {
+        return submit(datasets,candidates,() -> {
+            ArtificialTest at = new ArtificialTest(datasets,size,cache);
+            if(family.equals("SP")) at.executeSP(theta,param,fileOut,false);
+            else if(family.equals("EP")) at.executeEP(theta,param,fileOut,false);
+            else if(family.equals("DP")) at.executeDP(theta,param,fileOut,false);
+            else throw new IllegalArgumentException("unknown family " + family);
+        });
+    }
+
+    /**
+     * Stops the scheduler after the submitted jobs are completed
+     */
+    void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Submits a job, estimating its memory from the datasets that are not resident, a copy of the largest
+     * dataset used by PrefixSpan, and the candidates. The memory of a dataset that is not stored in a file
+     * is the one estimated by the cache
+     * @param  datasets   the input datasets
+     * @param  candidates the expected number of candidates of the job
+     * @param  task       the task executed by the job
+     * @return  the future completed at the end of the job
+     */
+    Future<Void> submit(String[] datasets, long candidates, Task task) throws IOException {
+        long estimate = 0;
+        long maxBytes = 0;
+        for(String dataset: datasets){
+            File file = new File(dataset);
+            long bytes = file.exists() ? datasetFactor*file.length() : cache.bytes(dataset);
+            if(!cache.contains(dataset)) estimate += bytes;
+            maxBytes = Math.max(maxBytes,bytes);
+        }
+        estimate += maxBytes + candidates*datasets.length*candidateBytes;
+        Job job = new Job(task,estimate);
+        synchronized(this){
+            queue.add(job);
+            dispatch();
+        }
+        return job.result;
+    }
+
+    /**
+     * Starts the jobs at the head of the queue as long as their estimated memory fits in the budget
+     */
+    private synchronized void dispatch(){
+        while(!queue.isEmpty()){
+            Job job = queue.peek();
+            if(running>=maxRunning || (running>0 && reserved+job.estimate>budget)) return;
+            queue.poll();
+            reserved += job.estimate;
+            running++;
+            pool.submit(() -> {
+                try {
+                    job.task.run();
+                    job.result.complete(null);
+                } catch (Throwable e) {
+                    job.result.completeExceptionally(e);
+                }
+                release(job);
+            });
+        }
+    }
+
+    /**
+     * Releases the memory of a completed job and starts the next ones
+     * @param  job        the completed job
+     */
+    private synchronized void release(Job job){
+        reserved -= job.estimate;
+        running--;
+        dispatch();
+    }
+}
@@ -22,25 +22,16 @@
 /**
  * This class is used to record the maximum memory usaged of an algorithm during
  * a given execution.
- * It is implemented by using the "singleton" design pattern.
+ * Each execution has its own instance, so that the executions running at the same
+ * time in different threads do not share it. The time, the allocated bytes and the
+ * counters of the phases of gRosSo are recorded by the Metrics class.
  *
  */
 public class MemoryLogger {
 	
-	// the only instance  of this class (this is the "singleton" design pattern)
-	private static MemoryLogger instance = new MemoryLogger();
-
 	// variable to store the maximum memory usage
 	private double maxMemory = 0;
 	
-	/**
-	 * Method to obtain the only instance of this class
-	 * @return instance of MemoryLogger
-	 */
-	public static MemoryLogger getInstance(){
-		return instance;
-	}
-	
 	/**
 	 * To get the maximum amount of memory used until now
 	 * @return a double value indicating memory as megabytes
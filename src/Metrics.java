@@ -0,0 +1,237 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects the performance metrics of an execution: for each phase (load, computeMaxDev, mining,
+ * the exploration of each dataset, write) the number of times it is executed, its time, the bytes allocated
+ * by the thread that executes it and the time spent by the garbage collector, and counters such as the
+ * candidates checked and pruned in each dataset, the transactions scanned and the calls of isSubsequence.
+ * Each execution has its own metrics, that can be updated by more threads at the same time. A phase binds
+ * its metrics to the thread that executes it, so that the supports counted by the worker threads of
+ * ShardedDataset are attributed to the execution that requested them. The metrics are exported as a JSON
+ * report at the end of the execution.
+ * The allocated bytes only include the thread that executes the phase, while the time of the garbage
+ * collector includes all the threads of the JVM. The phases may be nested, so that the metrics of a phase
+ * include the ones of the phases it contains.
+ * Disabled metrics, such as the ones of the sliding window by default, record nothing and are not exported.
+ */
+public class Metrics {
+
+    private static final ThreadLocal<Metrics> CURRENT = new ThreadLocal<>();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private boolean enabled;
+    private long startNanos;
+    private long startGC;
+    private ConcurrentHashMap<String,Total> phases;
+    private ConcurrentHashMap<String,LongAdder> counters;
+
+    /**
+     * Creates empty metrics, whose execution starts now
+     */
+    Metrics(){
+        this(true);
+    }
+
+    private Metrics(boolean enabled){
+        this.enabled = enabled;
+        startNanos = System.nanoTime();
+        startGC = gcMillis();
+        phases = new ConcurrentHashMap<>();
+        counters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates metrics that record nothing, so that their phases and counters cost nothing
+     * @return  the disabled metrics
+     */
+    static Metrics disabled(){
+        return new Metrics(false);
+    }
+
+    /**
+     * Checks if the metrics record the phases and the counters
+     * @return  true if the metrics are enabled, false otherwise
+     */
+    boolean enabled(){
+        return enabled;
+    }
+
+    /**
+     * Class that stores the totals of a phase
+     */
+    private static class Total {
+        LongAdder count = new LongAdder();
+        LongAdder nanos = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        LongAdder gc = new LongAdder();
+    }
+
+    /**
+     * Class that measures a running phase, until it is stopped
+     */
+    class Phase {
+        private String name;
+        private Metrics previous;
+        private long nanos;
+        private long allocated;
+        private long gc;
+
+        private Phase(String name){
+            this.name = name;
+            if(!enabled) return;
+            previous = CURRENT.get();
+            CURRENT.set(Metrics.this);
+            allocated = allocatedBytes();
+            gc = gcMillis();
+            nanos = System.nanoTime();
+        }
+
+        /**
+         * Stops the phase, adding its measures to the totals of the phases with the same name, and binds
+         * to the thread the metrics that were bound before the phase started
+         */
+        void stop(){
+            if(!enabled) return;
+            long elapsed = System.nanoTime()-nanos;
+            Total total = phases.computeIfAbsent(name,k -> new Total());
+            total.count.increment();
+            total.nanos.add(elapsed);
+            total.allocated.add(allocatedBytes()-allocated);
+            total.gc.add(gcMillis()-gc);
+            if(previous==null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Starts a phase in the current thread
+     * @param   name  the name of the phase
+     * @return  the running phase
+     */
+    Phase start(String name){
+        return new Phase(name);
+    }
+
+    /**
+     * Returns the metrics of the phase running in the current thread
+     * @return  the metrics, or null if no phase is running
+     */
+    static Metrics current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Adds a value to a counter
+     * @param   counter  the name of the counter
+     * @param   delta    the value to add
+     */
+    void add(String counter, long delta){
+        if(!enabled) return;
+        counters.computeIfAbsent(counter,k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Returns the value of a counter
+     * @param   counter  the name of the counter
+     * @return  the value of the counter, or 0 if it has never been updated
+     */
+    long counter(String counter){
+        LongAdder value = counters.get(counter);
+        return value==null ? 0 : value.sum();
+    }
+
+    /**
+     * Returns the JSON report of the metrics, with the phases and the counters sorted by name
+     * @return  the report
+     */
+    String toJson(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"wallMillis\": ").append(millis(System.nanoTime()-startNanos)).append(",\n");
+        sb.append("  \"gcMillis\": ").append(gcMillis()-startGC).append(",\n");
+        sb.append("  \"phases\": {");
+        String sep = "\n";
+        for(Map.Entry<String,Total> e: new TreeMap<>(phases).entrySet()){
+            Total total = e.getValue();
+            sb.append(sep).append("    ").append(quote(e.getKey())).append(": {");
+            sb.append("\"count\": ").append(total.count.sum());
+            sb.append(", \"millis\": ").append(millis(total.nanos.sum()));
+            sb.append(", \"allocatedBytes\": ").append(total.allocated.sum());
+            sb.append(", \"gcMillis\": ").append(total.gc.sum()).append("}");
+            sep = ",\n";
+        }
+        sb.append(phases.isEmpty() ? "},\n" : "\n  },\n");
+        sb.append("  \"counters\": {");
+        sep = "\n";
+        for(Map.Entry<String,LongAdder> e: new TreeMap<>(counters).entrySet()){
+            sb.append(sep).append("    ").append(quote(e.getKey())).append(": ").append(e.getValue().sum());
+            sep = ",\n";
+        }
+        sb.append(counters.isEmpty() ? "}\n" : "\n  }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Writes the JSON report of the metrics in the provided file
+     * @param   file  the output file
+     */
+    void write(String file) throws IOException {
+        FileWriter fw = new FileWriter(file);
+        BufferedWriter bw = new BufferedWriter(fw);
+        bw.write(toJson());
+        bw.close();
+        fw.close();
+    }
+
+    /**
+     * Returns the file of the JSON report of an execution that writes the provided output file
+     * @param   fileOut  the output file of the execution
+     * @return  the file of the report (e.g., out_metrics.json for out.txt)
+     */
+    static String reportFile(String fileOut){
+        return fileOut.split("\\.txt")[0]+"_metrics.json";
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far
+     * @return  the allocated bytes, or 0 if the JVM does not measure them
+     */
+    private static long allocatedBytes(){
+        if(THREADS instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()){
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the time spent by the garbage collectors so far
+     * @return  the time in milliseconds
+     */
+    private static long gcMillis(){
+        long millis = 0;
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()){
+            millis += Math.max(0,gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static String millis(long nanos){
+        return String.format(Locale.ROOT,"%.3f",nanos/1e6);
+    }
+
+    private static String quote(String s){
+        return "\"" + s.replace("\\","\\\\").replace("\"","\\\"") + "\"";
+    }
+}
@@ -1,5 +1,11 @@
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class is used to generated the real Netflix datasets.
@@ -7,10 +13,18 @@ import java.util.*;
 
 public class NetflixDataset {
 
-    private HashMap<Integer, ArrayList<Pair>>[] datasets;
+    private static final String[] FILES = {"../data/combined_data_1","../data/combined_data_2","../data/combined_data_3","../data/combined_data_4"};
+    // the maximum number of runs merged at the same time, each with its own buffer and file descriptor
+    static int mergeFanIn = 64;
+
+    // the datasets of all the sequences: the datasets of the s-th sequence are first[s]..first[s+1]-1
+    // the ratings of each user are stored as longs date << 32 | movie
+    private HashMap<Integer, long[]>[] datasets;
     private HashMap<Integer, Integer> movieYears;
-    private int movie = -1;
-    private int[] intervals;
+    // the years of the movies, indexed by movie
+    private int[] years;
+    private int[][] intervals;
+    private int[] first;
     
 
     /**
@@ -18,15 +32,177 @@ public class NetflixDataset {
      * @param   intervals  an array that contains the dates to generate the datasets  
      */
     NetflixDataset(int[] intervals) throws IOException {
-        datasets = new HashMap[intervals.length/2];
+        this(new int[][]{intervals});
+    }
+
+    /**
+     * Constructor that generates the datasets of more sequences with a single scan of the Netflix files.
+     * Each rating is added to the dataset of each sequence whose interval contains its date
+     * @param   intervals  an array that contains, for each sequence, the dates to generate its datasets
+     */
+    NetflixDataset(int[][] intervals) throws IOException {
+        this(intervals, true);
+    }
+
+    /**
+     * Constructor
+     * @param   intervals  an array that contains, for each sequence, the dates to generate its datasets
+     * @param   load       if true, the ratings are loaded in memory, otherwise only the years of the movies
+     */
+    private NetflixDataset(int[][] intervals, boolean load) throws IOException {
         this.intervals = intervals;
-        for (int i = 0; i < intervals.length / 2; i++) datasets[i] = new HashMap<>();
+        first = new int[intervals.length + 1];
+        for (int s = 0; s < intervals.length; s++) first[s + 1] = first[s] + intervals[s].length / 2;
+        datasets = new HashMap[first[intervals.length]];
         movieYears = new HashMap<>();
         loadYears("../data/movie_titles");
-        loadData("../data/combined_data_1");
-        loadData("../data/combined_data_2");
-        loadData("../data/combined_data_3");
-        loadData("../data/combined_data_4");
+        int maxMovie = 0;
+        for (int movie : movieYears.keySet()) maxMovie = Math.max(maxMovie, movie);
+        years = new int[maxMovie + 1];
+        for (Map.Entry<Integer, Integer> e : movieYears.entrySet()) years[e.getKey()] = e.getValue();
+        if (!load) return;
+        // the files are loaded in parallel, each in its own maps, and then merged
+        Int2ObjectOpenHashMap<Ratings>[][] parts = newRatings(FILES.length, datasets.length);
+        Sink[] sinks = new Sink[FILES.length];
+        for (int k = 0; k < FILES.length; k++) {
+            Int2ObjectOpenHashMap<Ratings>[] ratings = parts[k];
+            sinks[k] = (dataset, user, rating, position) -> {
+                Ratings userRatings = ratings[dataset].get(user);
+                if (userRatings == null) {
+                    userRatings = new Ratings(user);
+                    ratings[dataset].put(user, userRatings);
+                }
+                userRatings.add(rating, position);
+            };
+        }
+        loadAll(sinks);
+        for (int i = 0; i < datasets.length; i++) datasets[i] = merge(parts, i);
+    }
+
+    /**
+     * Generates the datasets of more sequences with a memory that does not depend on the number of ratings,
+     * and writes them in the files provided in input. The ratings are sorted in runs, which are written in
+     * temporary files and then merged. The budget of ratings kept in memory is shared by the threads that
+     * load the Netflix files, so each of them writes runs of at most runBudget / FILES.length ratings.
+     * The runs are merged in more passes when they are more than mergeFanIn. The users are written in
+     * increasing order of id
+     * @param   intervals  an array that contains, for each sequence, the dates to generate its datasets
+     * @param   file       an array that contains, for each sequence, the names of the files of its datasets
+     * @param   runBudget  the maximum number of ratings kept in memory by all the loading threads
+     * @return  the statistics of the datasets of each sequence
+     */
+    static Statistics[][] writeExternal(int[][] intervals, String[][] file, int runBudget) throws IOException {
+        NetflixDataset nd = new NetflixDataset(intervals, false);
+        File dir = new File(file[0][0]).getAbsoluteFile().getParentFile();
+        ArrayList<File> runs = new ArrayList<>();
+        Spill[] sinks = new Spill[FILES.length];
+        int runSize = Math.max(1, runBudget / FILES.length);
+        for (int k = 0; k < FILES.length; k++) sinks[k] = nd.new Spill(runSize, dir, runs);
+        nd.loadAll(sinks);
+        for (Spill sink : sinks) sink.spill();
+        while (runs.size() > mergeFanIn) runs = mergeRuns(runs, dir);
+        SequenceWriter[] writers = new SequenceWriter[nd.datasets.length];
+        for (int s = 0; s < intervals.length; s++) {
+            for (int j = 0; j < intervals[s].length / 2; j++) writers[nd.first[s] + j] = nd.new SequenceWriter(file[s][j]);
+        }
+        // k-way merge of the runs, ordered by dataset, user and rating
+        PriorityQueue<Run> queue = open(runs);
+        long[] sequence = new long[16];
+        int size = 0;
+        int dataset = -1;
+        int user = -1;
+        while (!queue.isEmpty()) {
+            Run r = queue.poll();
+            if (r.dataset != dataset || r.user != user) {
+                if (size > 0) writers[dataset].write(sequence, size);
+                dataset = r.dataset;
+                user = r.user;
+                size = 0;
+            }
+            if (size == sequence.length) sequence = Arrays.copyOf(sequence, 2 * size);
+            sequence[size++] = r.rating;
+            if (r.next()) queue.add(r);
+            else r.close();
+        }
+        if (size > 0) writers[dataset].write(sequence, size);
+        Statistics[][] statistics = new Statistics[intervals.length][];
+        for (int s = 0; s < intervals.length; s++) {
+            statistics[s] = new Statistics[intervals[s].length / 2];
+            for (int j = 0; j < statistics[s].length; j++) {
+                writers[nd.first[s] + j].close();
+                statistics[s][j] = writers[nd.first[s] + j].statistics;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Opens the provided runs, reading their first ratings
+     * @param runs  the runs
+     * @return the queue of the runs that are not empty, ordered by their current rating
+     */
+    private static PriorityQueue<Run> open(List<File> runs) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        for (File run : runs) {
+            Run r = new Run(run);
+            if (r.next()) queue.add(r);
+            else r.close();
+        }
+        return queue;
+    }
+
+    /**
+     * Merges the runs in groups of mergeFanIn runs, writing each group in a new run and deleting the merged ones
+     * @param runs  the runs
+     * @param dir   the folder of the new runs
+     * @return the runs after the merge
+     */
+    private static ArrayList<File> mergeRuns(ArrayList<File> runs, File dir) throws IOException {
+        ArrayList<File> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += mergeFanIn) {
+            List<File> group = runs.subList(from, Math.min(from + mergeFanIn, runs.size()));
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            PriorityQueue<Run> queue = open(group);
+            long records = 0;
+            for (Run r : queue) records += r.records;
+            File run = File.createTempFile("netflix", ".run", dir);
+            run.deleteOnExit();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+            out.writeLong(records);
+            while (!queue.isEmpty()) {
+                Run r = queue.poll();
+                out.writeInt(r.dataset);
+                out.writeInt(r.user);
+                out.writeLong(r.rating);
+                if (r.next()) queue.add(r);
+                else r.close();
+            }
+            out.close();
+            merged.add(run);
+        }
+        return merged;
+    }
+
+    /**
+     * Loads the Netflix files in parallel, one thread for each file, passing the ratings to the sinks
+     * @param sinks  the sink of each file
+     */
+    private void loadAll(Sink[] sinks) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(FILES.length);
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for (int k = 0; k < FILES.length; k++) {
+            int part = k;
+            results.add(pool.submit(() -> loadData(part, FILES[part], sinks[part])));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> result : results) result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
@@ -41,42 +217,37 @@ public class NetflixDataset {
         // Create the sequence 2004(Q1-Q4) composed by 2004Q1, 2004Q2, 2004Q3 and 2004Q4
         int[] separator1 = {20040101,20040331,20040401,20040630,20040701,20040930,20041001,20041231};
         String[] fileDataset1 = {"../data/2004q1_SPMF.txt","../data/2004q2_SPMF.txt","../data/2004q3_SPMF.txt","../data/2004q4_SPMF.txt"};
-        NetflixDataset nd = new NetflixDataset(separator1);
-        nd.writeData(fileDataset1);
-        for(int k = 0;k<fileDataset1.length;k++){
-            nd.analyze(fileDataset1[k]);
-        }
         // Create the sequence 2005(Q1-Q4) composed by 2005Q1, 2005Q2, 2005Q3 and 2005Q4
         int[] separator2 = {20050101,20050331,20050401,20050630,20050701,20050930,20051001,20051231};
         String[] fileDataset2 = {"../data/2005q1_SPMF.txt","../data/2005q2_SPMF.txt","../data/2005q3_SPMF.txt","../data/2005q4_SPMF.txt"};
-        nd = new NetflixDataset(separator2);
-        nd.writeData(fileDataset2);
-        for(int k = 0;k<fileDataset2.length;k++){
-            nd.analyze(fileDataset2[k]);
-        }
         // Create the sequence 2004(T1-T3) composed by 2004T1, 2004T2 and 2004T3
         int[] separator3 = {20040101,20040430,20040501,20040831,20040901,20041231};
         String[] fileDataset3 = {"../data/2004t1_SPMF.txt","../data/2004t2_SPMF.txt","../data/2004t3_SPMF.txt"};
-        nd = new NetflixDataset(separator3);
-        nd.writeData(fileDataset3);
-        for(int k = 0;k<fileDataset3.length;k++){
-            nd.analyze(fileDataset3[k]);
-        }
         // Create the sequence 2005(T1-T3) composed by 2005T1, 2005T2 and 2005T3
         int[] separator4 = {20050101,20050430,20050501,20050831,20050901,20051231};
         String[] fileDataset4 = {"../data/2005t1_SPMF.txt","../data/2005t2_SPMF.txt","../data/2005t3_SPMF.txt"};
-        nd = new NetflixDataset(separator4);
-        nd.writeData(fileDataset4);
-        for(int k = 0;k<fileDataset4.length;k++){
-            nd.analyze(fileDataset4[k]);
-        }
         // Create the sequence 2003-2005(Y) composed by 2003, 2004 and 2005
         int[] separator5 = {20030101,20031231,20040101,20041231,20050101,20051231};
         String[] fileDataset5 = {"../data/2003_SPMF.txt","../data/2004_SPMF.txt","../data/2005_SPMF.txt"};
-        nd = new NetflixDataset(separator5);
-        nd.writeData(fileDataset5);
-        for(int k = 0;k<fileDataset5.length;k++){
-            nd.analyze(fileDataset5[k]);
+        // All the sequences are generated with a single scan of the Netflix files
+        int[][] separators = {separator1,separator2,separator3,separator4,separator5};
+        String[][] fileDatasets = {fileDataset1,fileDataset2,fileDataset3,fileDataset4,fileDataset5};
+        // With the argument --external the ratings are sorted on disk, using a memory that does not depend on their number
+        // With the argument --run-budget n the loading threads keep at most n ratings in memory (default 1<<24)
+        // The characteristics of the datasets are collected while they are written
+        boolean external = Arrays.asList(args).contains("--external");
+        int runBudget = 1<<24;
+        int option = Arrays.asList(args).indexOf("--run-budget");
+        if(option>=0) runBudget = Integer.parseInt(args[option+1]);
+        NetflixDataset nd = null;
+        Statistics[][] statistics = new Statistics[separators.length][];
+        if(external) statistics = writeExternal(separators,fileDatasets,runBudget);
+        else nd = new NetflixDataset(separators);
+        for(int s = 0;s<separators.length;s++){
+            if(!external) statistics[s] = nd.writeData(s,fileDatasets[s]);
+            for(int k = 0;k<fileDatasets[s].length;k++){
+                statistics[s][k].print(fileDatasets[s][k]);
+            }
         }
     }
 
@@ -102,170 +273,507 @@ public class NetflixDataset {
     }
 
     /**
-     * Load the ratings of the movies contained in the input file
+     * Interface of the destination of the ratings loaded from a file
+     */
+    private interface Sink {
+        /**
+         * Adds a rating to a dataset
+         * @param dataset   the index of the dataset
+         * @param user      the user
+         * @param rating    the rating, as date << 32 | movie
+         * @param position  the position of the rating in the input files
+         */
+        void add(int dataset, int user, long rating, long position);
+    }
+
+    /**
+     * Load the ratings of the movies contained in the input file, parsing its bytes directly
+     * @param part  the index of the file
      * @param file  the input file
+     * @param sink  the destination of the ratings
      */
-    private void loadData(String file) {
+    private void loadData(int part, String file, Sink sink) {
         try {
-            FileReader fr = new FileReader(file + ".txt");
-            BufferedReader br = new BufferedReader(fr);
-            String line = br.readLine();
-            boolean valid=true;
-            while (line != null) {
-                try {
-                    if (line.charAt(line.length() - 1) == ':') {
-                        movie = Integer.parseInt(line.split(":")[0]);
-                        if(movieYears.get(movie)==0) valid = false;
-                        else valid = true;
-
-                    } else if(valid){
-                        String[] splitLine = line.split(",");
-                        int user = Integer.parseInt(splitLine[0]);
-                        int date = Integer.parseInt(splitLine[2].replaceAll("-", ""));
-                        int year = date / 10000;
-                        if(year>=movieYears.get(movie)) {
-                            int index = -1;
-                            for (int j = 0; j < intervals.length / 2; j++) {
-                                if (date >= intervals[2 * j] && date <= intervals[2 * j + 1]) {
-                                    index = j;
-                                    break;
+            InputStream in = new FileInputStream(file + ".txt");
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int length = 0;
+            long position = (long) part << 40;
+            int movie = -1;
+            // the ratings are kept only after the id of a movie whose year is known
+            boolean valid = false;
+            boolean eof = false;
+            while (!eof) {
+                int n = in.read(buffer);
+                if (n <= 0) {
+                    // the last line is processed also if it does not end with a new line
+                    eof = true;
+                    buffer[0] = '\n';
+                    n = 1;
+                }
+                for (int b = 0; b < n; b++) {
+                    if (buffer[b] != '\n') {
+                        if (length == line.length) line = Arrays.copyOf(line, 2 * length);
+                        line[length++] = buffer[b];
+                        continue;
+                    }
+                    if (length > 0 && line[length - 1] == '\r') length--;
+                    if (length == 0) continue;
+                    position++;
+                    if (line[length - 1] == ':') {
+                        int id = parseInt(line, 0, length - 1);
+                        if (id == -1) System.err.println(new String(line, 0, length));
+                        else {
+                            movie = id;
+                            valid = movie < years.length && years[movie] != 0;
+                        }
+                    } else if (valid) {
+                        int comma1 = indexOf(line, ',', 0, length);
+                        int comma2 = indexOf(line, ',', comma1 + 1, length);
+                        int user = comma1 == -1 ? -1 : parseInt(line, 0, comma1);
+                        int date = comma2 == -1 ? -1 : parseInt(line, comma2 + 1, length);
+                        if (user == -1 || date == -1) System.err.println(new String(line, 0, length));
+                        else if (date / 10000 >= years[movie]) {
+                            long rating = ((long) date << 32) | movie;
+                            for (int s = 0; s < intervals.length; s++) {
+                                for (int j = 0; j < intervals[s].length / 2; j++) {
+                                    if (date >= intervals[s][2 * j] && date <= intervals[s][2 * j + 1]) {
+                                        sink.add(first[s] + j, user, rating, position);
+                                        break;
+                                    }
                                 }
                             }
-                            if (index != -1) {
-                                ArrayList<Pair> movieList;
-                                if (datasets[index].containsKey(user)) movieList = datasets[index].remove(user);
-                                else movieList = new ArrayList<>();
-                                movieList.add(new Pair(movie, date));
-                                datasets[index].put(user, movieList);
-                            }
                         }
                     }
-                } catch (NumberFormatException e) {
-                    System.err.println(line);
+                    length = 0;
                 }
-                line = br.readLine();
             }
-            br.close();
-            fr.close();
+            in.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Parse a non-negative integer from a range of bytes, skipping the '-' of the dates
+     * @param line  the bytes
+     * @param from  the first position of the range
+     * @param to    the position after the last one of the range
+     * @return the parsed integer, or -1 if the range does not contain a valid integer
+     */
+    private static int parseInt(byte[] line, int from, int to) {
+        int value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            if (line[i] == '-') continue;
+            if (line[i] < '0' || line[i] > '9') return -1;
+            value = value * 10 + (line[i] - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+
+    /**
+     * Find the first occurrence of a byte in a range of bytes
+     * @param line  the bytes
+     * @param c     the byte to find
+     * @param from  the first position of the range
+     * @param to    the position after the last one of the range
+     * @return the position of the byte, or -1 if it is not in the range
+     */
+    private static int indexOf(byte[] line, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the empty maps of the ratings of each dataset, for each file
+     * @param files     the number of files
+     * @param datasets  the number of datasets
+     * @return the maps of the ratings
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Int2ObjectOpenHashMap<Ratings>[][] newRatings(int files, int datasets) {
+        Int2ObjectOpenHashMap<Ratings>[][] ratings = new Int2ObjectOpenHashMap[files][datasets];
+        for (Int2ObjectOpenHashMap<Ratings>[] maps : ratings) {
+            for (int i = 0; i < maps.length; i++) maps[i] = new Int2ObjectOpenHashMap<>();
+        }
+        return ratings;
+    }
+
+    /**
+     * Merge the ratings of a dataset loaded from the different files. The users are inserted in the order
+     * of their last rating, so that the dataset is written in the same order of a sequential loading
+     * @param parts  the ratings loaded from each file
+     * @param i      the index of the dataset
+     * @return the ratings of each user in the dataset
+     */
+    private static HashMap<Integer, long[]> merge(Int2ObjectOpenHashMap<Ratings>[][] parts, int i) {
+        Int2ObjectOpenHashMap<Ratings> merged = parts[0][i];
+        for (int k = 1; k < parts.length; k++) {
+            for (Ratings userRatings : parts[k][i].values()) {
+                Ratings current = merged.get(userRatings.user);
+                if (current == null) merged.put(userRatings.user, userRatings);
+                else current.addAll(userRatings);
+            }
+            parts[k][i] = null;
+        }
+        Ratings[] users = merged.values().toArray(new Ratings[0]);
+        parts[0][i] = null;
+        Arrays.sort(users, (o1, o2) -> Long.compare(o1.last, o2.last));
+        HashMap<Integer, long[]> dataset = new HashMap<>();
+        for (Ratings userRatings : users) dataset.put(userRatings.user, Arrays.copyOf(userRatings.ratings, userRatings.size));
+        return dataset;
+    }
+
     /**
      * Write the generated datasets in the files provided in input
      * @param file  an array that contains the names of the files of the generated datasets
      */
-    public void writeData(String[] file) {
-        try {
-            for (int i = 0; i < intervals.length / 2; i++) {
-                FileWriter fw = new FileWriter(file[i]);
-                BufferedWriter bw = new BufferedWriter(fw);
-                ArrayList<Pair> movieList;
-                for (int user : datasets[i].keySet()) {
-                    movieList = datasets[i].get(user);
-                    movieList.sort(Pair::compareTo);
-                    HashSet<Integer> currentSet = new HashSet<>();
-                    for (int j = 0; j < movieList.size() - 1; j++) {
-                        Pair current = movieList.get(j);
-                        currentSet.add(movieYears.get(current.getMovie()));
-                        if (current.getDate() != movieList.get(j + 1).getDate()){
-                            ArrayList<Integer> c = new ArrayList<>(currentSet);
-                            c.sort(Integer::compareTo);
-                            for(int f:c){
-                                bw.write(f + " ");
-                            }
-                            bw.write("-1 ");
-                            currentSet = new HashSet<>();
-                        }
-                    }
-                    currentSet.add(movieYears.get(movieList.get(movieList.size() - 1).getMovie()));
-                    ArrayList<Integer> c = new ArrayList<>(currentSet);
-                    c.sort(Integer::compareTo);
-                    for(int f:c){
-                        bw.write(f + " ");
+    public void writeData(String[] file) throws IOException {
+        writeData(0, file);
+    }
+
+    /**
+     * Write the generated datasets of a sequence in the files provided in input, one thread for each file.
+     * The ratings of each dataset are released once its file is written, and the file of a dataset that
+     * cannot be written is deleted
+     * @param s     the index of the sequence
+     * @param file  an array that contains the names of the files of the generated datasets
+     * @return the statistics of the generated datasets
+     */
+    public Statistics[] writeData(int s, String[] file) throws IOException {
+        int n = intervals[s].length / 2;
+        Statistics[] statistics = new Statistics[n];
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        ArrayList<Future<Statistics>> results = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int index = first[s] + i;
+            HashMap<Integer, long[]> dataset = datasets[index];
+            String fileOut = file[i];
+            results.add(pool.submit(() -> {
+                SequenceWriter sw = new SequenceWriter(fileOut);
+                boolean written = false;
+                try {
+                    long[] movieList;
+                    for (int user : dataset.keySet()) {
+                        movieList = dataset.get(user);
+                        Arrays.sort(movieList);
+                        sw.write(movieList, movieList.length);
                     }
-                    bw.write("-1 -2\n");
+                    written = true;
+                } finally {
+                    sw.close();
+                    if (!written) new File(fileOut).delete();
                 }
-                bw.close();
-                fw.close();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+                datasets[index] = null;
+                return sw.statistics;
+            }));
         }
+        pool.shutdown();
+        try {
+            for (int i = 0; i < n; i++) statistics[i] = results.get(i).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+        return statistics;
     }
 
     /**
      * Compute and write to the standard output the statistics of the input dataset
      * @param file  the input dataset
      */
-    public void analyze(String file) {
+    public static void analyze(String file) {
         try {
             FileReader fr = new FileReader(file);
             BufferedReader br = new BufferedReader(fr);
             String line = br.readLine();
-            int nLine = 0;
-            int lengthTran = 0;
-            int itemlengthTran = 0;
-            boolean repeated = false;
-            HashSet<Integer> items = new HashSet<>();
-            HashSet<Integer> itemsTransaction;
+            Statistics statistics = new Statistics();
             while (line != null) {
-                itemsTransaction = new HashSet<>();
-                nLine++;
                 String[] splitLine = line.split(" -1 ");
-                lengthTran += splitLine.length - 1;
                 for (int i = 0; i < splitLine.length - 1; i++) {
                     String[] splitItemset = splitLine[i].split(" ");
-                    itemlengthTran += splitItemset.length;
                     for (String s : splitItemset) {
-                        int item = Integer.parseInt(s);
-                        if (!repeated) {
-                            repeated = itemsTransaction.contains(item);
-                            itemsTransaction.add(item);
-                        }
-                        items.add(item);
+                        statistics.add(Integer.parseInt(s));
                     }
+                    statistics.endItemset();
                 }
+                statistics.endTransaction();
                 line = br.readLine();
             }
+            statistics.print(file);
+            br.close();
+            fr.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Class that stores the statistics of a dataset: its items, its number of transactions, the number of
+     * itemsets and of items of its transactions, and if an item appears in more itemsets of a transaction
+     */
+    static class Statistics {
+        private IntOpenHashSet items = new IntOpenHashSet();
+        private IntOpenHashSet itemsTransaction = new IntOpenHashSet();
+        private int nLine;
+        private long lengthTran;
+        private long itemlengthTran;
+        private boolean repeated;
+
+        /**
+         * Add an item to the current itemset
+         * @param item  the item
+         */
+        void add(int item) {
+            itemlengthTran++;
+            if (!repeated) repeated = !itemsTransaction.add(item);
+            items.add(item);
+        }
+
+        /**
+         * Close the current itemset
+         */
+        void endItemset() {
+            lengthTran++;
+        }
+
+        /**
+         * Close the current transaction
+         */
+        void endTransaction() {
+            nLine++;
+            itemsTransaction.clear();
+        }
+
+        /**
+         * Write the statistics to the standard output
+         * @param file  the name of the dataset
+         */
+        void print(String file) {
             System.out.println("Dataset: " + file);
             System.out.println("Number of items: " + items.size());
             System.out.println("Number of transactions: " + nLine);
             System.out.println("AVG transaction length: " + (lengthTran / (nLine * 1.)));
             System.out.println("AVG transaction item-length: " + (itemlengthTran / (nLine * 1.)));
             System.out.println("Repeated items: " + repeated);
-            br.close();
-            fr.close();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
     /**
-     * Private class that implements a simple and comparable pair structure that represents a rating 
-     * of a movie in a particular date
+     * Class that writes the sequences of a dataset, where each itemset contains the years of the movies
+     * rated by the user in the same date, and collects the statistics of the dataset. Each sequence is
+     * formatted in a reusable buffer of bytes
+     */
+    private class SequenceWriter {
+        private OutputStream out;
+        private byte[] line = new byte[1 << 10];
+        private int length;
+        private int[] itemset = new int[16];
+        private Statistics statistics = new Statistics();
+
+        SequenceWriter(String file) throws IOException {
+            out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        }
+
+        /**
+         * Write the sequence of a user
+         * @param movieList  the sorted ratings of the user, as date << 32 | movie
+         * @param size       the number of ratings
+         */
+        void write(long[] movieList, int size) throws IOException {
+            length = 0;
+            int start = 0;
+            for (int j = 1; j <= size; j++) {
+                if (j < size && (movieList[j] >>> 32) == (movieList[start] >>> 32)) continue;
+                int n = 0;
+                for (int k = start; k < j; k++) {
+                    if (n == itemset.length) itemset = Arrays.copyOf(itemset, 2 * n);
+                    itemset[n++] = years[(int) movieList[k]];
+                }
+                Arrays.sort(itemset, 0, n);
+                for (int k = 0; k < n; k++) {
+                    if (k > 0 && itemset[k] == itemset[k - 1]) continue;
+                    append(itemset[k]);
+                    statistics.add(itemset[k]);
+                }
+                append(-1);
+                statistics.endItemset();
+                start = j;
+            }
+            append(-2);
+            line[length - 1] = '\n';
+            statistics.endTransaction();
+            out.write(line, 0, length);
+        }
+
+        /**
+         * Append an integer followed by a space to the current sequence
+         * @param value  the integer
+         */
+        private void append(int value) {
+            if (length + 12 > line.length) line = Arrays.copyOf(line, 2 * line.length);
+            if (value < 0) {
+                line[length++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (int v = value / 10; v > 0; v /= 10) digits++;
+            for (int d = length + digits - 1; d >= length; d--) {
+                line[d] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+            line[length++] = ' ';
+        }
+
+        /**
+         * Close the file of the dataset
+         */
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Private class that stores the ratings of a user in a dataset, as longs date << 32 | movie, and the
+     * position in the input files of the last one
+     */
+    private static class Ratings {
+        private int user;
+        private long[] ratings = new long[4];
+        private int size;
+        private long last;
+
+        Ratings(int user) {
+            this.user = user;
+        }
+
+        void add(long rating, long position) {
+            if (size == ratings.length) ratings = Arrays.copyOf(ratings, 2 * size);
+            ratings[size++] = rating;
+            last = position;
+        }
+
+        void addAll(Ratings next) {
+            if (size + next.size > ratings.length) ratings = Arrays.copyOf(ratings, size + next.size);
+            System.arraycopy(next.ratings, 0, ratings, size, next.size);
+            size += next.size;
+            last = next.last;
+        }
+    }
+
+    /**
+     * Private class that collects the ratings loaded from a file and, when they are runSize, writes them
+     * sorted by dataset, user and rating in a temporary file
+     */
+    private class Spill implements Sink {
+        private Int2ObjectOpenHashMap<Ratings>[] ratings;
+        private int records;
+        private int runSize;
+        private File dir;
+        private ArrayList<File> runs;
+
+        Spill(int runSize, File dir, ArrayList<File> runs) {
+            this.runSize = runSize;
+            this.dir = dir;
+            this.runs = runs;
+            ratings = newRatings(1, datasets.length)[0];
+        }
+
+        public void add(int dataset, int user, long rating, long position) {
+            Ratings userRatings = ratings[dataset].get(user);
+            if (userRatings == null) {
+                userRatings = new Ratings(user);
+                ratings[dataset].put(user, userRatings);
+            }
+            userRatings.add(rating, position);
+            if (++records >= runSize) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Writes the collected ratings in a new run
+         */
+        void spill() throws IOException {
+            if (records == 0) return;
+            File run = File.createTempFile("netflix", ".run", dir);
+            run.deleteOnExit();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+            out.writeLong(records);
+            for (int i = 0; i < ratings.length; i++) {
+                int[] users = ratings[i].keySet().toIntArray();
+                Arrays.sort(users);
+                for (int user : users) {
+                    Ratings userRatings = ratings[i].get(user);
+                    Arrays.sort(userRatings.ratings, 0, userRatings.size);
+                    for (int r = 0; r < userRatings.size; r++) {
+                        out.writeInt(i);
+                        out.writeInt(user);
+                        out.writeLong(userRatings.ratings[r]);
+                    }
+                }
+                ratings[i] = new Int2ObjectOpenHashMap<>();
+            }
+            out.close();
+            records = 0;
+            synchronized (runs) {
+                runs.add(run);
+            }
+        }
+    }
+
+    /**
+     * Private class that reads a run one rating at a time
      */
-    private class Pair implements Comparable<Pair> {
-        private int movie;
-        private int date;
+    private static class Run implements Comparable<Run> {
+        private File file;
+        private DataInputStream in;
+        private long records;
+        private long remaining;
+        private int dataset;
+        private int user;
+        private long rating;
 
-        Pair(int movie, int date) {
-            this.movie = movie;
-            this.date = date;
+        Run(File file) throws IOException {
+            this.file = file;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            records = in.readLong();
+            remaining = records;
         }
 
-        int getMovie() {
-            return movie;
+        /**
+         * Reads the next rating of the run
+         * @return true if a rating has been read, false if the run is finished
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            dataset = in.readInt();
+            user = in.readInt();
+            rating = in.readLong();
+            return true;
         }
 
-        int getDate() {
-            return date;
+        /**
+         * Closes and deletes the run
+         */
+        void close() throws IOException {
+            in.close();
+            file.delete();
         }
 
-        public int compareTo(Pair m2) {
-            if (date == m2.getDate()) return movie - m2.getMovie();
-            return date - m2.getDate();
+        public int compareTo(Run r) {
+            if (dataset != r.dataset) return Integer.compare(dataset, r.dataset);
+            if (user != r.user) return Integer.compare(user, r.user);
+            return Long.compare(rating, r.rating);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,3 @@
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import java.io.*;
 import java.math.BigInteger;
@@ -14,11 +12,34 @@ public class SP {
     private String[] datasets;
     private int[] size;
     private double[] mu;
+    // if true, the datasets are loaded in a single index and explored in a single traversal
+    boolean singlePass = false;
+    // if not null, the state of the execution is saved in the checkpoint after the mining and after each explored dataset
+    Checkpoint checkpoint = null;
+    // if true, the datasets are streamed one shard at a time during the exploration, instead of being loaded in memory
+    boolean outOfCore = false;
+    // if true, the datasets loaded during the exploration are stored off-heap (see CSRDataset)
+    boolean offHeap = false;
+    // the performance metrics of the execution, exported in a JSON report when the patterns are written
+    Metrics metrics = new Metrics();
+    // the position in the exploration order of the next dataset to explore
+    private int next = 0;
     private HashMap<String,double[]> candidate;
     SP(String[] datasets){
+        this(datasets,new int[datasets.length],new double[datasets.length]);
+    }
+
+    /**
+     * Creates an instance that shares the sizes and the maximum deviations of the datasets with other
+     * instances, so that they are computed only once
+     * @param   datasets  the input datasets
+     * @param   size      the sizes of the datasets
+     * @param   mu        the upper bounds on the maximum deviations of the datasets
+     */
+    SP(String[] datasets, int[] size, double[] mu){
         this.datasets = datasets;
-        size = new int[datasets.length];
-        mu = new double[datasets.length];
+        this.size = size;
+        this.mu = mu;
         candidate = new HashMap<>();
     }
 
@@ -36,16 +57,44 @@ public class SP {
         // the output dataset
         String fileOut = "../data/2005q_SP_1_2.txt";
         SP sp = new SP(datasets);
+        // set sp.outOfCore = true to stream the datasets during the exploration when they do not fit in memory
+        // the state of the execution is saved in a checkpoint file: run with --resume to continue a failed execution
+        sp.checkpoint = new Checkpoint(fileOut+".ckpt",Arrays.asList(args).contains("--resume"));
+        // run with --off-heap to store the datasets outside of the heap during the exploration
+        sp.offHeap = Arrays.asList(args).contains("--off-heap");
+        // set sp.singlePass = true to verify the candidates against all datasets in a single traversal
         sp.executeThetaAll(delta,alpha,theta,fileOut);
     }
 
     /**
-     * Writes the mined stable sequential patterns in the provided file
+     * Returns the mined stable sequential patterns
+     * @return  the patterns
+     */
+    Set<String> patterns(){
+        return candidate.keySet();
+    }
+
+    /**
+     * Writes the mined stable sequential patterns in the provided file, and the JSON report of the metrics
+     * of the execution, if they are enabled, in the file given by Metrics.reportFile
      * @param  file  the output file
      */
-    private void write(String file) throws IOException {
+    void write(String file) throws IOException {
+        Metrics.Phase phase = metrics.start("write");
         FileWriter fw = new FileWriter(file);
         BufferedWriter bw = new BufferedWriter(fw);
+        write(bw);
+        bw.close();
+        fw.close();
+        phase.stop();
+        if(metrics.enabled()) metrics.write(Metrics.reportFile(file));
+    }
+
+    /**
+     * Writes the mined stable sequential patterns in the provided writer, one per line
+     * @param  bw  the output writer
+     */
+    void write(BufferedWriter bw) throws IOException {
         for (String sp: candidate.keySet()) {
             double[] freq = candidate.get(sp);
             bw.write(sp);
@@ -54,8 +103,6 @@ public class SP {
             }
             bw.write("\n");
         }
-        bw.close();
-        fw.close();
     }
 
     /**
@@ -66,27 +113,46 @@ public class SP {
      * @param  fileOut  the output file
      */
     void executeThetaAll(double delta, double alpha, double theta, String fileOut) throws IOException {
+        boolean restored = restore("executeThetaAll",delta,alpha,theta);
+        if(!restored){
+            for(int i=0;i<datasets.length;i++){
+                computeMaxDev(i,delta/(datasets.length*1.));
+            }
+        }
+        double[] minFreq = minFrequencies(theta);
+        int iMax = minedDataset(minFreq);
+        if(!restored) mine(iMax,minFreq[iMax]);
+        exploreDatasets(iMax,alpha,theta);
+        write(fileOut);
+        if(checkpoint!=null) checkpoint.close();
+    }
+
+    /**
+     * Computes the minimum frequency that a stable sequential pattern must have in each dataset
+     * @param   theta    the minimum frequency threshold used for all the datasets
+     * @return  the minimum frequencies
+     */
+    double[] minFrequencies(double theta){
         double[] minFreq = new double[datasets.length];
+        for(int i=0;i<datasets.length;i++) minFreq[i] = theta + mu[i];
+        return minFreq;
+    }
+
+    /**
+     * Returns the index of the dataset to mine, i.e., the one with the highest minimum frequency
+     * @param   minFreq  the minimum frequencies of the datasets
+     * @return  the index of the dataset to mine
+     */
+    static int minedDataset(double[] minFreq){
         int iMax = -1;
         double maxMinFreq = 0;
-        for(int i=0;i<datasets.length;i++){
-            computeMaxDev(i,delta/(datasets.length*1.));
-            minFreq[i] = theta + mu[i];
+        for(int i=0;i<minFreq.length;i++){
             if(minFreq[i]>maxMinFreq){
                 maxMinFreq = minFreq[i];
                 iMax = i;
             }
         }
-        String fileC = datasets[iMax].split("\\.txt")[0];
-        fileC+=(System.currentTimeMillis())+"_mined.txt";
-        mining(datasets[iMax],fileC,minFreq[iMax]);
-        loadCandidate(iMax,fileC);
-        for(int j=0;j<datasets.length;j++){
-            if(j!=iMax) exploreDataset(j,alpha,theta);
-        }
-        write(fileOut);
-        File del = new File(fileC);
-        del.delete();
+        return iMax;
     }
 
     /**
@@ -94,207 +160,217 @@ public class SP {
      * for the index-th dataset
      * @param   index    the index of the dataset
      * @param   delta    the confidence parameter
+     * @return  the upper bound on the VC-dimension of the index-th dataset
      */
-    private void computeMaxDev(int index, double delta) {
-        int datasetSize = 0;
+    int computeMaxDev(int index, double delta) {
+        Metrics.Phase phase = metrics.start("computeMaxDev");
         int sIndex = 0;
-        ArrayList<Triple> orderedSet = new ArrayList<>();
-        HashSet<String> set = new HashSet<>();
         try {
             FileReader fr = new FileReader(datasets[index]);
             BufferedReader br = new BufferedReader(fr);
-            String line;
-            while ((line = br.readLine()) != null) {
-                datasetSize++;
-                if (!set.contains(line)) {
-                    BigInteger cap = CapacityTest.getCapacity(line);
-                    if (cap.compareTo(new BigInteger("2").pow(sIndex).subtract(BigInteger.ONE)) > 0) {
-                        Object[] curr = convert(line);
-                        boolean sub = false;
-                        for (Triple t : orderedSet) {
-                            sub = isSubsequence(curr, t.getValue());
-                            if (sub || (cap.compareTo(t.getCapacity()) > 0)) break;
-                        }
-                        if (!sub) {
-                            set.add(line);
-                            int i = 0;
-                            while (i < orderedSet.size() && (orderedSet.get(i).getCapacity().compareTo(cap) > 0)) i++;
-                            orderedSet.add(i, new Triple(line, cap, curr));
-                            if (orderedSet.get(orderedSet.size() - 1).getCapacity().compareTo(new BigInteger("2").pow(sIndex).subtract(BigInteger.ONE)) > 0)
-                                sIndex++;
-                            else {
-                                String removable = orderedSet.remove(orderedSet.size() - 1).getSequence();
-                                set.remove(removable);
-                            }
-                        }
-                    }
-                }
-            }
+            int[] datasetSize = new int[1];
+            sIndex = boundDimension(br.lines().iterator(),datasetSize);
             br.close();
             fr.close();
-            mu[index] = Math.sqrt(1 / (2. * datasetSize) * (sIndex + Math.log(1. / delta)));
-            size[index] = datasetSize;
+            mu[index] = Math.sqrt(1 / (2. * datasetSize[0]) * (sIndex + Math.log(1. / delta)));
+            size[index] = datasetSize[0];
         } catch (Exception e) {
             e.printStackTrace();
         }
+        phase.stop();
+        return sIndex;
     }
 
     /**
-     * Converts a transaction from a string to an array of itemsets, that are arrays of int
-     * @param   s   the transaction
-     * @return  the converted transaction
+     * Computes an upper bound on the VC-dimension of sequential patterns for the dataset made of the provided
+     * transactions, so that it can be computed also for datasets that are not stored in a file
+     * @param   lines        the transactions of the dataset, in SPMF format
+     * @param   datasetSize  the array where the number of transactions is stored
+     * @return  the upper bound on the VC-dimension of the dataset
      */
-    private Object[] convert(String s) {
-        String[] splited = s.split("-2")[0].split(" -1 ");
-        Object[] transaction = new Object[splited.length];
-        int j = 0;
-        for (String itemset_string : splited) {
-            String[] splited2 = itemset_string.split(" ");
-            int[] itemset = new int[splited2.length];
-            int i = 0;
-            for (String item_string : splited2) {
-                int item = Integer.parseInt(item_string);
-                itemset[i++] = item;
+    static int boundDimension(Iterator<String> lines, int[] datasetSize) {
+        int sIndex = 0;
+        ArrayList<Triple> orderedSet = new ArrayList<>();
+        HashSet<String> set = new HashSet<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            datasetSize[0]++;
+            if (!set.contains(line)) {
+                BigInteger cap = CapacityTest.getCapacity(line);
+                if (cap.compareTo(new BigInteger("2").pow(sIndex).subtract(BigInteger.ONE)) > 0) {
+                    int[] curr = CSRDataset.parse(line);
+                    boolean sub = false;
+                    for (Triple t : orderedSet) {
+                        sub = CSRDataset.isSubsequence(curr, t.getValue());
+                        if (sub || (cap.compareTo(t.getCapacity()) > 0)) break;
+                    }
+                    if (!sub) {
+                        set.add(line);
+                        int i = 0;
+                        while (i < orderedSet.size() && (orderedSet.get(i).getCapacity().compareTo(cap) > 0)) i++;
+                        orderedSet.add(i, new Triple(line, cap, curr));
+                        if (orderedSet.get(orderedSet.size() - 1).getCapacity().compareTo(new BigInteger("2").pow(sIndex).subtract(BigInteger.ONE)) > 0)
+                            sIndex++;
+                        else {
+                            String removable = orderedSet.remove(orderedSet.size() - 1).getSequence();
+                            set.remove(removable);
+                        }
+                    }
+                }
             }
-            transaction[j++] = itemset;
         }
-        return transaction;
+        return sIndex;
     }
 
     /**
-     * Converts a transaction from a string to an array of itemsets, that are arrays of int, and updates
-     * an index structure that stores the transactions in which an itemset appears
-     * @param   s         the transaction
-     * @param   transac   the index of the transaction
-     * @param   itemsMap  an index structure that stores the transactions in which an itemset appears   
-     * @return  the converted transaction
+     * Explores the i-th dataset to prune the starting candidate
+     * @param   i         the index of the dataset to explore
+     * @param   alpha     the error threshold
+     * @param   theta     the minimum frequency threshold  
      */
-    private Object[] convertAndUpdate(String s, int transac, Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap){
-        String[] splited = s.split("-2")[0].split(" -1 ");
-        Object[] transaction = new Object[splited.length];
-        int j = 0;
-        for(String itemset_string: splited){
-            String[] splited2 = itemset_string.split(" ");
-            int[] itemset = new int[splited2.length];
-            int i = 0;
-            for(String item_string: splited2){
-                int item = Integer.parseInt(item_string);
-                itemset[i++] = item;
-                if(itemsMap.containsKey(item)){
-                    itemsMap.get(item).add(transac);
-                }
-                else{
-                    IntOpenHashSet transactions = new IntOpenHashSet();
-                    transactions.add(transac);
-                    itemsMap.put(item,transactions);
-                }
+    private void exploreDataset(int i,double alpha,double theta) throws IOException {
+        Metrics.Phase phase = metrics.start("exploreDataset["+i+"]");
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[] frequencies = ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,datasets[i])[0];
+        int pruned = 0;
+        for(int k=0;k<patterns.length;k++){
+            if(!update(candidate.get(keys.get(k)),i,frequencies[k],alpha,theta)){
+                candidate.remove(keys.get(k));
+                pruned++;
             }
-            transaction[j++] = itemset;
         }
-        return transaction;
+        metrics.add("candidates["+i+"]",patterns.length);
+        metrics.add("pruned["+i+"]",pruned);
+        phase.stop();
     }
 
     /**
-     * Explores the i-th dataset to prune the starting candidate
-     * @param   i         the index of the dataset to explore
+     * Explores all the datasets, except the mined one, to prune the starting candidate.
+     * If singlePass is true, all the datasets are loaded in a single index and the frequencies of each
+     * candidate in all of them are computed in a single traversal, then the candidate is checked against
+     * the datasets in the same order used by the sequential exploration
+     * @param   iMax      the index of the mined dataset
      * @param   alpha     the error threshold
-     * @param   theta     the minimum frequency threshold  
+     * @param   theta     the minimum frequency threshold
      */
-    private void exploreDataset(int i,double alpha,double theta) throws IOException {
-        ObjectArrayList<Object[]> dataset = new ObjectArrayList<>();
-        Int2ObjectOpenHashMap<IntOpenHashSet> itemsMap = new Int2ObjectOpenHashMap<>();
-        FileReader fr = new FileReader(datasets[i]);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
-        int transac = 0;
-        while((line=br.readLine())!=null){
-            dataset.add(convertAndUpdate(line,transac++,itemsMap));
+    private void exploreDatasets(int iMax,double alpha,double theta) throws IOException {
+        int[] order = new int[datasets.length-1];
+        int o = 0;
+        for(int j=0;j<datasets.length;j++){
+            if(j!=iMax) order[o++] = j;
         }
-        br.close();
-        fr.close();
-        Set<String> remove = new HashSet<>();
-        for (String s: candidate.keySet()){
-            IntOpenHashSet toCheck = null;
-            String[] splited = s.split(" -1 ");
-            Object[] transaction = new Object[splited.length];
-            int k = 0;
-            for(String itemset_string: splited){
-                String[] splited2 = itemset_string.split(" ");
-                int[] itemset = new int[splited2.length];
-                int l = 0;
-                for(String item_string: splited2){
-                    int item = Integer.parseInt(item_string);
-                    itemset[l++] = item;
-                    if(!itemsMap.containsKey(item)) toCheck = new IntOpenHashSet();
-                    else {
-                        if (toCheck == null) {
-                            toCheck = itemsMap.get(item).clone();
-                        } else {
-                            toCheck.retainAll(itemsMap.get(item));
-                        }
-                    }
-                }
-                transaction[k++] = itemset;
+        order = Arrays.copyOfRange(order,next,order.length);
+        if(!singlePass){
+            for(o=0;o<order.length;o++){
+                exploreDataset(order[o],alpha,theta);
+                if(checkpoint!=null) checkpoint.save(datasets,mu,size,candidate,next+o+1);
             }
-            double freq = computeFrequency(transaction,dataset,toCheck);
-            if(freq-mu[i]>=theta) {
-                boolean rem =  false;
-                for(int j=0;j<datasets.length && !rem;j++) {
-                    double f2 = candidate.get(s)[j];
-                    if(f2!=-1) {
-                        if ((freq + mu[i] - (f2 - mu[j]) > alpha) || (f2 + mu[j] - (freq - mu[i]) > alpha)) {
-                            remove.add(s);
-                            rem = true;
-                        }
-                        if (!rem) candidate.get(s)[i] = freq;
-                    }
+            return;
+        }
+        Metrics.Phase phase = metrics.start("exploreDatasets");
+        String[] files = new String[order.length];
+        for(o=0;o<order.length;o++) files[o] = datasets[order[o]];
+        ObjectArrayList<String> keys = new ObjectArrayList<>(candidate.keySet());
+        int[][] patterns = new int[keys.size()][];
+        for(int k=0;k<patterns.length;k++) patterns[k] = CSRDataset.parse(keys.get(k));
+        double[][] frequencies = ShardedDataset.computeFrequencies(patterns,outOfCore,offHeap,files);
+        int[] checked = new int[order.length];
+        int[] pruned = new int[order.length];
+        for(int k=0;k<patterns.length;k++){
+            double[] freq = candidate.get(keys.get(k));
+            for(o=0;o<order.length;o++){
+                checked[o]++;
+                if(!update(freq,order[o],frequencies[o][k],alpha,theta)){
+                    pruned[o]++;
+                    candidate.remove(keys.get(k));
+                    break;
                 }
             }
-            else remove.add(s);
         }
-        for(String s: remove) candidate.remove(s);
+        for(o=0;o<order.length;o++){
+            metrics.add("candidates["+order[o]+"]",checked[o]);
+            metrics.add("pruned["+order[o]+"]",pruned[o]);
+        }
+        phase.stop();
     }
 
     /**
-     * Check if the sequence min is a subsequence of sequence max
-     * @param   min  the first sequence
-     * @param   max  the second sequence
-     * @return  true if min is a subsequence of max, false otherwise
+     * Selects the stable sequential patterns from a table with the supports of the candidates in all the
+     * datasets: a candidate is kept if it is frequent in the dataset with the highest minimum frequency,
+     * and if it is not pruned checking the other datasets in the same order used by the exploration
+     * @param   table     the supports of the candidates
+     * @param   minFreq   the minimum frequencies of the datasets
+     * @param   alpha     the error threshold
+     * @param   theta     the minimum frequency threshold
      */
-    private boolean isSubsequence(Object[] min,Object[] max){
-        if(min.length>max.length) return false;
-        int i = 0;
-        int j = 0;
-        while(i<min.length && j<max.length) {
-            int[] itemsetMin = (int[])min[i];
-            int[] itemsetMax = (int[])max[j];
-            if (itemsetMin.length <= itemsetMax.length) {
-                int l = 0;
-                int k = 0;
-                while (k < itemsetMin.length && l < itemsetMax.length) {
-                    if (itemsetMax[l++]==itemsetMin[k]) k++;
-                }
-                if (k == itemsetMin.length) i++;
+    void select(FrequencyTable table, double[] minFreq, double alpha, double theta){
+        int iMax = minedDataset(minFreq);
+        for(int p=0;p<table.size();p++){
+            if(!table.isFrequent(p,iMax,minFreq[iMax])) continue;
+            double[] freq = new double[datasets.length];
+            for(int k=0;k<freq.length;k++) freq[k] = -1;
+            freq[iMax] = table.frequency(p,iMax);
+            boolean stable = true;
+            for(int j=0;j<datasets.length && stable;j++){
+                if(j!=iMax) stable = update(freq,j,table.frequency(p,j),alpha,theta);
             }
-            j++;
+            if(stable) candidate.put(table.pattern(p),freq);
         }
-        return i == min.length;
     }
 
     /**
-     * Computes the frequency of the input sequence in the input dataset considering the transactions
-     * stored in the index structure
-     * @param   s         the input sequence
-     * @param   dataset   the input dataset
-     * @param   toCheck   an index structure that stores the transactions in which an itemset appears
-     * @return  the computed frequency
+     * Checks if a candidate is still a stable sequential pattern given its frequency in the i-th dataset,
+     * and stores the frequency
+     * @param   freqs     the frequencies of the candidate (-1 for the datasets not explored yet)
+     * @param   i         the index of the dataset
+     * @param   freq      the frequency of the candidate in the i-th dataset
+     * @param   alpha     the error threshold
+     * @param   theta     the minimum frequency threshold
+     * @return  false if the candidate must be pruned, true otherwise
      */
-    double computeFrequency(Object[] s, ObjectArrayList<Object[]> dataset, IntOpenHashSet toCheck){
-        int supp = 0;
-        for (int i: toCheck) {
-            if(isSubsequence(s,dataset.get(i))) supp++;
+    private boolean update(double[] freqs, int i, double freq, double alpha, double theta){
+        if(freq-mu[i]<theta) return false;
+        for(int j=0;j<datasets.length;j++) {
+            double f2 = freqs[j];
+            if(f2!=-1) {
+                if ((freq + mu[i] - (f2 - mu[j]) > alpha) || (f2 + mu[j] - (freq - mu[i]) > alpha)) return false;
+                freqs[i] = freq;
+            }
         }
-        return supp/(dataset.size()*1.);
+        return true;
+    }
+
+    /**
+     * Restores the state of the execution from the checkpoint, if it must be resumed and it was saved by
+     * the same execute method with the same parameters
+     * @param   method  the execute method
+     * @param   params  the parameters of the execute method
+     * @return  true if the state has been restored, false otherwise
+     */
+    private boolean restore(String method, double... params) throws IOException {
+        if(checkpoint==null) return false;
+        next = checkpoint.restore("SP."+method+" "+Arrays.toString(params),datasets,mu,size,candidate);
+        if(next>=0) return true;
+        next = 0;
+        return false;
+    }
+
+    /**
+     * Mines the index-th dataset and loads the mined FSP as starting candidate
+     * @param   index     the index of the dataset to mine
+     * @param   theta     the minimum frequency threshold
+     */
+    private void mine(int index, double theta) throws IOException {
+        Metrics.Phase phase = metrics.start("mining");
+        String fileC = GRosSo.minedFile(datasets[index]);
+        metrics.add("minedPatterns",mining(datasets[index],fileC,theta));
+        loadCandidate(index,fileC);
+        File del = new File(fileC);
+        del.delete();
+        phase.stop();
+        if(checkpoint!=null) checkpoint.save(datasets,mu,size,candidate,0);
     }
 
     /**
@@ -342,11 +418,11 @@ public class SP {
     /**
      * Private class that implements a simple triple structure
      */
-    private class Triple implements Comparable<Triple> {
-        Object[] val;
+    private static class Triple implements Comparable<Triple> {
+        int[] val;
         private String sp;
         private BigInteger cap;
-        Triple(String sp, BigInteger cap, Object[] val) {
+        Triple(String sp, BigInteger cap, int[] val) {
             this.sp = sp;
             this.cap = cap;
             this.val = val;
@@ -357,7 +433,7 @@ public class SP {
         String getSequence() {
             return sp;
         }
-        Object[] getValue() {
+        int[] getValue() {
             return val;
         }
         public int compareTo(Triple p2) {
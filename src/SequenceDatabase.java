@@ -193,6 +193,33 @@ public class SequenceDatabase {
 		return sequences.size();
 	}
 	
+	/**
+	 * Make a copy of this sequence database, with a copy of each sequence, so that the
+	 * copy can be mined without modifying this database.
+	 * @return the copy.
+	 */
+	public SequenceDatabase copy() {
+		SequenceDatabase clone = new SequenceDatabase();
+		clone.sequences = new ArrayList<int[]>(sequences.size());
+		for(int[] sequence : sequences) {
+			clone.sequences.add(sequence.clone());
+		}
+		clone.itemOccurrenceCount = itemOccurrenceCount;
+		return clone;
+	}
+
+	/**
+	 * Make a sequence database with the provided sequences, without copying them, so that
+	 * more databases can share the same sequences. It must be copied before being mined.
+	 * @param sequences the sequences in SPMF format.
+	 * @return the sequence database.
+	 */
+	public static SequenceDatabase of(List<int[]> sequences) {
+		SequenceDatabase database = new SequenceDatabase();
+		database.sequences = sequences;
+		return database;
+	}
+
 	/**
 	 * Get the sequences from this sequence database.
 	 * @return A list of sequences (int[]) in SPMF format.
@@ -0,0 +1,303 @@
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class stores one or more datasets partitioned into shards of consecutive transactions. Each shard
+ * is a CSRDataset, with its own transactions and index structure, small enough to fit in the L2/L3 cache,
+ * and it is tagged with the index of the dataset it belongs to.
+ * The supports of the candidate patterns are computed in parallel on the shards and then summed for each
+ * dataset, so that the frequencies of the candidates in all the datasets are computed in a single traversal.
+ * Each shard is always assigned to the same worker thread, so that its data stays in the cache of the
+ * same core among different calls.
+ * The shards are shared by the datasets resampled from these datasets, so they are reference counted: they
+ * are released only when these datasets and all the resampled ones have been closed.
+ */
+public class ShardedDataset {
+
+    // the estimated size in bytes of a shard
+    static long shardBytes = 2L<<20;
+    private static ExecutorService[] workers;
+
+    private CSRDataset[] shards;
+    private int[] tags;
+    private int[] size;
+    // the weights of the transactions of each shard, or null if each transaction is counted once
+    private int[][] weights;
+    // the references to the shards, shared with the resampled datasets
+    private AtomicInteger references;
+
+    private ShardedDataset(CSRDataset[] shards, int[] tags, int datasets, AtomicInteger references){
+        this.shards = shards;
+        this.tags = tags;
+        this.references = references;
+        size = new int[datasets];
+        for(int s=0;s<shards.length;s++) size[tags[s]] += shards[s].size();
+    }
+
+    /**
+     * Returns a dataset resampled with replacement from these datasets, where each transaction appears as
+     * many times as its multiplicity. The resampled dataset shares the shards of these datasets, that are not
+     * copied, and it only stores the multiplicities of the transactions. It holds a reference to the shards,
+     * that is released when it is closed
+     * @param   multiplicity  the multiplicities of the transactions, in the order of the datasets
+     * @return  the resampled dataset
+     */
+    ShardedDataset resample(int[] multiplicity){
+        retain();
+        ShardedDataset sample = new ShardedDataset(shards,tags,size.length,references);
+        sample.weights = new int[shards.length][];
+        Arrays.fill(sample.size,0);
+        int from = 0;
+        for(int s=0;s<shards.length;s++){
+            sample.weights[s] = Arrays.copyOfRange(multiplicity,from,from+shards[s].size());
+            for(int w: sample.weights[s]) sample.size[tags[s]] += w;
+            from += shards[s].size();
+        }
+        return sample;
+    }
+
+    /**
+     * Loads the datasets in SPMF format from the provided files, splitting each of them in shards of
+     * about shardBytes bytes
+     * @param   files  the input datasets
+     * @return  the loaded datasets
+     */
+    static ShardedDataset load(String... files) throws IOException {
+        return load(false,files);
+    }
+
+    /**
+     * Loads the datasets in SPMF format from the provided files, splitting each of them in shards of
+     * about shardBytes bytes stored off-heap or in arrays of int
+     * @param   offHeap  if true, the shards are stored off-heap
+     * @param   files    the input datasets
+     * @return  the loaded datasets
+     */
+    static ShardedDataset load(boolean offHeap, String... files) throws IOException {
+        Metrics metrics = Metrics.current();
+        Metrics.Phase phase = metrics==null ? null : metrics.start("load");
+        ObjectArrayList<CSRDataset> shards = new ObjectArrayList<>();
+        IntArrayList tags = new IntArrayList();
+        for(int i=0;i<files.length;i++){
+            CSRDataset.Builder builder = new CSRDataset.Builder(offHeap);
+            FileReader fr = new FileReader(files[i]);
+            BufferedReader br = new BufferedReader(fr);
+            String line;
+            int n = 0;
+            while((line=br.readLine())!=null){
+                builder.add(line);
+                if(builder.bytes()>=shardBytes){
+                    shards.add(builder.build());
+                    tags.add(i);
+                    builder = new CSRDataset.Builder(offHeap);
+                    n++;
+                }
+            }
+            br.close();
+            fr.close();
+            if(builder.size()>0 || n==0){
+                shards.add(builder.build());
+                tags.add(i);
+            }
+        }
+        if(phase!=null) phase.stop();
+        return new ShardedDataset(shards.toArray(new CSRDataset[0]),tags.toIntArray(),files.length,new AtomicInteger(1));
+    }
+
+    /**
+     * Computes the frequencies of the input patterns in each of the provided datasets, loading the datasets
+     * in memory and releasing them at the end or, if outOfCore is true, streaming them
+     * @param   patterns   the input patterns, converted with the CSRDataset.parse method
+     * @param   outOfCore  if true, the datasets are streamed with the streamFrequencies method
+     * @param   offHeap    if true, the shards are stored off-heap
+     * @param   files      the input datasets
+     * @return  the computed frequencies, where freq[i][p] is the frequency of the p-th pattern in the i-th dataset
+     */
+    static double[][] computeFrequencies(int[][] patterns, boolean outOfCore, boolean offHeap, String... files) throws IOException {
+        if(outOfCore) return streamFrequencies(patterns,offHeap,files);
+        ShardedDataset dataset = load(offHeap,files);
+        double[][] freq = dataset.computeFrequencies(patterns);
+        dataset.close();
+        return freq;
+    }
+
+    /**
+     * Computes the frequencies of the input patterns in each of the provided datasets without loading them
+     * in memory. Each dataset is read one shard at a time, the supports of the patterns in each shard are
+     * computed by the worker threads and the shard is then discarded. At most one shard for each worker is
+     * waiting or being counted, so that the memory used depends on shardBytes and not on the size of the datasets
+     * @param   patterns  the input patterns, converted with the CSRDataset.parse method
+     * @param   offHeap   if true, the shards are stored off-heap
+     * @param   files     the input datasets
+     * @return  the computed frequencies, where freq[i][p] is the frequency of the p-th pattern in the i-th dataset
+     */
+    static double[][] streamFrequencies(int[][] patterns, boolean offHeap, String... files) throws IOException {
+        ExecutorService[] workers = workers();
+        Metrics metrics = Metrics.current();
+        int[][] supp = new int[files.length][patterns.length];
+        int[] size = new int[files.length];
+        ArrayDeque<Future<int[]>> results = new ArrayDeque<>();
+        ArrayDeque<Integer> resultTags = new ArrayDeque<>();
+        int s = 0;
+        for(int i=0;i<files.length;i++){
+            CSRDataset.Builder builder = new CSRDataset.Builder(offHeap);
+            FileReader fr = new FileReader(files[i]);
+            BufferedReader br = new BufferedReader(fr,1<<16);
+            String line;
+            while(true){
+                line = br.readLine();
+                if(line!=null) builder.add(line);
+                if(builder.size()>0 && (line==null || builder.bytes()>=shardBytes)){
+                    if(results.size()>=workers.length) sum(results.poll(),supp[resultTags.poll()]);
+                    CSRDataset shard = builder.build();
+                    size[i] += shard.size();
+                    results.add(workers[s++%workers.length].submit(() -> {
+                        int[] shardSupp = shard.computeSupports(patterns,null,metrics);
+                        shard.close();
+                        return shardSupp;
+                    }));
+                    resultTags.add(i);
+                    builder = new CSRDataset.Builder(offHeap);
+                }
+                if(line==null) break;
+            }
+            br.close();
+            fr.close();
+        }
+        while(!results.isEmpty()) sum(results.poll(),supp[resultTags.poll()]);
+        double[][] freq = new double[files.length][patterns.length];
+        for(int i=0;i<files.length;i++){
+            for(int p=0;p<patterns.length;p++) freq[i][p] = supp[i][p]/(size[i]*1.);
+        }
+        return freq;
+    }
+
+    /**
+     * Waits for the supports computed on a shard and adds them to the supports of its dataset
+     * @param   result  the supports computed on the shard
+     * @param   supp    the supports of the dataset
+     */
+    private static void sum(Future<int[]> result, int[] supp){
+        try {
+            int[] shardSupp = result.get();
+            for(int p=0;p<supp.length;p++) supp[p] += shardSupp[p];
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the worker threads, one for each available core
+     * @return  the worker threads
+     */
+    private static synchronized ExecutorService[] workers(){
+        if(workers==null){
+            workers = new ExecutorService[Runtime.getRuntime().availableProcessors()];
+            for(int w=0;w<workers.length;w++){
+                workers[w] = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * Returns the number of transactions of the i-th dataset
+     * @param   i  the index of the dataset
+     * @return  the number of transactions
+     */
+    int size(int i){
+        return size[i];
+    }
+
+    /**
+     * Returns an estimate of the memory used by the shards
+     * @return  the estimated size in bytes
+     */
+    long bytes(){
+        long bytes = 0;
+        if(weights!=null){
+            for(int[] w: weights) bytes += 4L*w.length;
+            return bytes;
+        }
+        for(CSRDataset shard: shards) bytes += shard.bytes();
+        return bytes;
+    }
+
+    /**
+     * Adds a reference to the shards, so that they are not released until close is called once more, e.g.,
+     * while an execution uses a dataset that may be closed by its owner
+     */
+    void retain(){
+        references.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to the shards. When the last reference is released, the shards are released,
+     * freeing their memory if they are stored off-heap, and the datasets cannot be used anymore.
+     * Loading or resampling a dataset gives one reference, and retain gives one more
+     */
+    void close(){
+        if(references.decrementAndGet()==0){
+            for(CSRDataset shard: shards) shard.close();
+        }
+    }
+
+    /**
+     * Computes the supports of the input patterns in each dataset, counting them on each shard in parallel
+     * @param   patterns  the input patterns, converted with the CSRDataset.parse method
+     * @return  the computed supports, where supp[i][p] is the support of the p-th pattern in the i-th dataset
+     */
+    int[][] computeSupports(int[][] patterns){
+        int[][] supp = new int[size.length][];
+        if(shards.length==1){
+            supp[0] = shards[0].computeSupports(patterns,weights==null ? null : weights[0]);
+            return supp;
+        }
+        for(int i=0;i<size.length;i++) supp[i] = new int[patterns.length];
+        ExecutorService[] workers = workers();
+        // the shards are counted by the worker threads, on behalf of the execution of the current thread
+        Metrics metrics = Metrics.current();
+        ObjectArrayList<Future<int[]>> results = new ObjectArrayList<>(shards.length);
+        for(int s=0;s<shards.length;s++){
+            CSRDataset shard = shards[s];
+            int[] shardWeights = weights==null ? null : weights[s];
+            results.add(workers[s%workers.length].submit(() -> shard.computeSupports(patterns,shardWeights,metrics)));
+        }
+        try {
+            for(int s=0;s<shards.length;s++){
+                int[] shardSupp = results.get(s).get();
+                int[] datasetSupp = supp[tags[s]];
+                for(int p=0;p<patterns.length;p++) datasetSupp[p] += shardSupp[p];
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        return supp;
+    }
+
+    /**
+     * Computes the frequencies of the input patterns in each dataset
+     * @param   patterns  the input patterns, converted with the CSRDataset.parse method
+     * @return  the computed frequencies, where freq[i][p] is the frequency of the p-th pattern in the i-th dataset
+     */
+    double[][] computeFrequencies(int[][] patterns){
+        int[][] supp = computeSupports(patterns);
+        double[][] freq = new double[size.length][patterns.length];
+        for(int i=0;i<size.length;i++){
+            for(int p=0;p<patterns.length;p++) freq[i][p] = supp[i][p]/(size[i]*1.);
+        }
+        return freq;
+    }
+}
@@ -0,0 +1,217 @@
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * This class executes gRosSo on a continuous sequence of datasets, mining the stable, emerging and
+ * descending sequential patterns of the last window datasets each time a new dataset arrives.
+ * Each dataset is loaded and bounded only once, when it arrives, and it is retired when it leaves the window.
+ * For each dataset of the window it keeps the supports of the FSP already mined from it and of the candidates
+ * of the last window, so that a dataset is mined again only if a lower threshold is required, and only the
+ * new candidates are counted. The results are the same of GRosSo.execute on the same window.
+ */
+public class SlidingWindow {
+
+    private int window;
+    private double delta;
+    private double alpha;
+    private double epsilon;
+    private double theta;
+    private ArrayDeque<Slot> slots;
+    // the performance metrics of the windows: set it to new Metrics() to write a JSON report next to the
+    // output files of each window
+    Metrics metrics = Metrics.disabled();
+    // if true, the datasets of the window are stored off-heap (see CSRDataset)
+    boolean offHeap = false;
+
+    /**
+     * Creates an empty window
+     * @param  window   the number of datasets of the window
+     * @param  delta    the confidence parameter
+     * @param  alpha    the error threshold of the SP
+     * @param  epsilon  the emerging threshold of the EP and DP
+     * @param  theta    the minimum frequency threshold of the SP
+     */
+    SlidingWindow(int window, double delta, double alpha, double epsilon, double theta){
+        this.window = window;
+        this.delta = delta;
+        this.alpha = alpha;
+        this.epsilon = epsilon;
+        this.theta = theta;
+        slots = new ArrayDeque<>();
+    }
+
+    /**
+     * This main mines the stable, emerging and descending sequential patterns of the last four quarters,
+     * for each quarter of 2004 and 2005
+     */
+    public static void main(String[] args) throws IOException {
+        // the parameters
+        double theta = 0.2;
+        double alpha = 0.1;
+        double epsilon = 0.01;
+        double delta = 0.1;
+        // the input datasets, in order of arrival
+        String[] datasets = {"../data/2004q1_SPMF.txt","../data/2004q2_SPMF.txt","../data/2004q3_SPMF.txt","../data/2004q4_SPMF.txt",
+                "../data/2005q1_SPMF.txt","../data/2005q2_SPMF.txt","../data/2005q3_SPMF.txt","../data/2005q4_SPMF.txt"};
+        SlidingWindow sw = new SlidingWindow(4,delta,alpha,epsilon,theta);
+        // run with --off-heap to store the datasets of the window outside of the heap
+        sw.offHeap = Arrays.asList(args).contains("--off-heap");
+        for(int i=0;i<datasets.length;i++){
+            String fileOut = "../data/window"+(i+1);
+            sw.add(datasets[i],fileOut+"_SP.txt",fileOut+"_EP.txt",fileOut+"_DP.txt");
+        }
+    }
+
+    /**
+     * Class that stores a dataset of the window
+     */
+    private static class Slot {
+        String file;
+        DatasetCache.Entry entry;
+        // the supports counted in the dataset of the FSP mined from it and of the candidates of the last window
+        Object2IntOpenHashMap<String> supports = new Object2IntOpenHashMap<>();
+        // the FSP mined from the dataset with the minimum frequency threshold minedTheta
+        ObjectArrayList<String> mined;
+        double minedTheta = Double.MAX_VALUE;
+        Slot(String file, DatasetCache.Entry entry){
+            this.file = file;
+            this.entry = entry;
+        }
+
+        /**
+         * Removes the supports of the patterns that are neither candidates of the last window nor FSP
+         * mined from the dataset, so that the supports kept do not grow with the number of windows
+         * @param  candidates  the candidates of the last window
+         */
+        void retain(ObjectArrayList<String> candidates){
+            ObjectOpenHashSet<String> keep = new ObjectOpenHashSet<>(candidates);
+            if(mined!=null) keep.addAll(mined);
+            supports.keySet().retainAll(keep);
+        }
+    }
+
+    /**
+     * Adds a new dataset to the window, retiring the oldest one if the window is full, and mines the
+     * patterns of the window if it is full
+     * @param  file     the new dataset
+     * @param  fileSP   the output file for the SP
+     * @param  fileEP   the output file for the EP
+     * @param  fileDP   the output file for the DP
+     * @return  true if the window is full and the patterns have been mined, false otherwise
+     */
+    boolean add(String file, String fileSP, String fileEP, String fileDP) throws IOException {
+        Metrics.Phase phase = metrics.start("load");
+        slots.addLast(new Slot(file,DatasetCache.load(file,offHeap)));
+        phase.stop();
+        if(slots.size()>window) slots.removeFirst().entry.index.close();
+        if(slots.size()<window) return false;
+        Slot[] w = slots.toArray(new Slot[0]);
+        String[] datasets = new String[window];
+        int[] size = new int[window];
+        double[] mu = new double[window];
+        for(int i=0;i<window;i++){
+            datasets[i] = w[i].file;
+            size[i] = w[i].entry.size;
+            mu[i] = GRosSo.maxDev(size[i],w[i].entry.dim,delta/(window*1.));
+        }
+        SP sp = new SP(datasets,size,mu);
+        EP ep = new EP(datasets,size,mu);
+        DP dp = new DP(datasets,size,mu);
+        sp.metrics = metrics;
+        ep.metrics = metrics;
+        dp.metrics = metrics;
+        double[] minFreqSP = sp.minFrequencies(theta);
+        double[] minFreqEP = ep.minFrequencies(epsilon);
+        double[] minFreqDP = dp.minFrequencies(epsilon);
+        int index = 0;
+        double minFreq = -1;
+        for(int i=0;i<window;i++){
+            double curr = Math.min(minFreqSP[i],Math.min(minFreqEP[i],minFreqDP[i]));
+            if(curr>minFreq){
+                minFreq = curr;
+                index = i;
+            }
+        }
+        phase = metrics.start("mining");
+        ObjectArrayList<String> candidates = candidates(w[index],minFreq);
+        phase.stop();
+        phase = metrics.start("exploreDatasets");
+        int[][] supp = new int[window][];
+        for(int i=0;i<window;i++){
+            supp[i] = supports(w[i],candidates);
+            w[i].retain(candidates);
+        }
+        metrics.add("candidates",candidates.size());
+        phase.stop();
+        FrequencyTable table = new FrequencyTable(candidates,supp,size);
+        sp.select(table,minFreqSP,alpha,theta);
+        ep.select(table,minFreqEP,epsilon);
+        dp.select(table,minFreqDP,epsilon);
+        sp.write(fileSP);
+        ep.write(fileEP);
+        dp.write(fileDP);
+        return true;
+    }
+
+    /**
+     * Returns the FSP of a dataset with the provided minimum frequency threshold, mining the dataset only
+     * if it has not been already mined with a lower threshold
+     * @param   slot     the dataset
+     * @param   theta    the minimum frequency threshold
+     * @return  the FSP
+     */
+    private static ObjectArrayList<String> candidates(Slot slot, double theta) throws IOException {
+        if(theta<slot.minedTheta){
+            File fileC = File.createTempFile("grosso","_mined.txt");
+            AlgoPrefixSpan alg = new AlgoPrefixSpan();
+            alg.runAlgorithm(slot.entry.database.copy(),theta,fileC.getPath());
+            slot.mined = new ObjectArrayList<>();
+            FileReader fr = new FileReader(fileC);
+            BufferedReader br = new BufferedReader(fr);
+            String line;
+            while((line=br.readLine())!=null){
+                String[] splited = line.split("#SUP: ");
+                slot.mined.add(splited[0]);
+                slot.supports.put(splited[0],Integer.parseInt(splited[1].trim()));
+            }
+            br.close();
+            fr.close();
+            fileC.delete();
+            slot.minedTheta = theta;
+            return slot.mined;
+        }
+        int minSupp = (int) Math.ceil(theta * slot.entry.size);
+        if(minSupp==0) minSupp = 1;
+        ObjectArrayList<String> candidates = new ObjectArrayList<>();
+        for(String s: slot.mined){
+            if(slot.supports.getInt(s)>=minSupp) candidates.add(s);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the supports of the candidates in a dataset, counting only the candidates not already counted
+     * @param   slot        the dataset
+     * @param   candidates  the candidates
+     * @return  the supports of the candidates
+     */
+    private static int[] supports(Slot slot, ObjectArrayList<String> candidates){
+        ObjectArrayList<String> missing = new ObjectArrayList<>();
+        for(String s: candidates){
+            if(!slot.supports.containsKey(s)) missing.add(s);
+        }
+        if(!missing.isEmpty()){
+            int[][] patterns = new int[missing.size()][];
+            for(int p=0;p<patterns.length;p++) patterns[p] = CSRDataset.parse(missing.get(p));
+            int[] counted = slot.entry.index.computeSupports(patterns)[0];
+            for(int p=0;p<patterns.length;p++) slot.supports.put(missing.get(p),counted[p]);
+        }
+        int[] supp = new int[candidates.size()];
+        for(int p=0;p<supp.length;p++) supp[p] = slot.supports.getInt(candidates.get(p));
+        return supp;
+    }
+}